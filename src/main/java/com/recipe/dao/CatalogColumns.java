@@ -0,0 +1,210 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.util.AttributeDictionary;
+import com.recipe.util.RecipeChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-wise mirror of the resident catalog for counting and reporting. Each recipe is
+ * a row, and every attribute the reports use is a primitive array indexed by row:
+ * times and servings as ints, rating tallies as longs, the creation order key from
+ * {@link RecipeSort}, facets as {@link AttributeDictionary} codes, and approval as a
+ * bit set. Aggregates are plain loops over these arrays, without touching a Recipe.
+ *
+ * <p>Kept current through {@link RecipeChangeListener} callbacks like {@link RecipeIndex}.
+ * Rows of deleted recipes are reused. Readers take the same monitor as the writer, which
+ * holds it only to copy a few fields, so an aggregate sees one consistent catalog.
+ */
+public class CatalogColumns implements RecipeChangeListener {
+    public enum Facet {
+        CATEGORY(AttributeDictionary.CATEGORIES),
+        CUISINE(AttributeDictionary.CUISINES),
+        DIFFICULTY(AttributeDictionary.DIFFICULTIES);
+
+        private final AttributeDictionary dictionary;
+
+        Facet(AttributeDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        public AttributeDictionary getDictionary() {
+            return dictionary;
+        }
+
+        String valueOf(Recipe recipe) {
+            switch (this) {
+                case CATEGORY:
+                    return recipe.getCategory();
+                case CUISINE:
+                    return recipe.getCuisineType();
+                default:
+                    return recipe.getDifficultyLevel();
+            }
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> rows = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final BitSet approved = new BitSet();
+    private int capacity = INITIAL_CAPACITY;
+    private int[] preparationTime = new int[INITIAL_CAPACITY];
+    private int[] cookingTime = new int[INITIAL_CAPACITY];
+    private int[] servings = new int[INITIAL_CAPACITY];
+    private int[] totalRatings = new int[INITIAL_CAPACITY];
+    private long[] ratingSum = new long[INITIAL_CAPACITY];
+    private long[] age = new long[INITIAL_CAPACITY];
+    private final int[][] facetCodes = new int[Facet.values().length][INITIAL_CAPACITY];
+
+    @Override
+    public synchronized void recipeSaved(Recipe previous, Recipe current) {
+        Integer row = rows.get(current.getId());
+        if (row == null) {
+            row = live.nextClearBit(0);
+            if (row >= capacity) {
+                grow();
+            }
+            rows.put(current.getId(), row);
+            live.set(row);
+        }
+        preparationTime[row] = current.getPreparationTime();
+        cookingTime[row] = current.getCookingTime();
+        servings[row] = current.getServings();
+        totalRatings[row] = current.getTotalRatings();
+        ratingSum[row] = current.getRatingSum();
+        age[row] = RecipeSort.age(current);
+        approved.set(row, current.isApproved());
+        for (Facet facet : Facet.values()) {
+            facetCodes[facet.ordinal()][row] = facet.dictionary.code(facet.valueOf(current));
+        }
+    }
+
+    @Override
+    public synchronized void recipeDeleted(Recipe previous) {
+        Integer row = rows.remove(previous.getId());
+        if (row != null) {
+            live.clear(row);
+            approved.clear(row);
+        }
+    }
+
+    private void grow() {
+        capacity *= 2;
+        preparationTime = Arrays.copyOf(preparationTime, capacity);
+        cookingTime = Arrays.copyOf(cookingTime, capacity);
+        servings = Arrays.copyOf(servings, capacity);
+        totalRatings = Arrays.copyOf(totalRatings, capacity);
+        ratingSum = Arrays.copyOf(ratingSum, capacity);
+        age = Arrays.copyOf(age, capacity);
+        for (int i = 0; i < facetCodes.length; i++) {
+            facetCodes[i] = Arrays.copyOf(facetCodes[i], capacity);
+        }
+    }
+
+    public synchronized int count() {
+        return live.cardinality();
+    }
+
+    public synchronized int countApproved() {
+        return approved.cardinality();
+    }
+
+    // Recipes whose total time is within [min, max] minutes
+    public synchronized int countTotalTimeBetween(int min, int max) {
+        int count = 0;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            int total = preparationTime[row] + cookingTime[row];
+            if (total >= min && total <= max) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Recipes serving between min and max people, inclusive
+    public synchronized int countServingsBetween(int min, int max) {
+        int count = 0;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            if (servings[row] >= min && servings[row] <= max) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Recipes created at or after the given order key (see IdGenerator.sortKeyOf)
+    public synchronized int countCreatedSince(long sortKey) {
+        int count = 0;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            if (age[row] >= sortKey) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Recipes per total time bucket of the given width; the last bucket is open-ended
+    public synchronized int[] totalTimeHistogram(int bucketMinutes, int buckets) {
+        int[] histogram = new int[buckets];
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            int bucket = Math.max(0, preparationTime[row] + cookingTime[row]) / bucketMinutes;
+            histogram[Math.min(bucket, buckets - 1)]++;
+        }
+        return histogram;
+    }
+
+    // Recipes per value of the facet, indexed by dictionary code
+    public synchronized int[] countBy(Facet facet) {
+        int[] codes = facetCodes[facet.ordinal()];
+        int[] counts = new int[facet.dictionary.size()];
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            counts[codes[row]]++;
+        }
+        return counts;
+    }
+
+    // Average of all votes cast on recipes with each value of the facet, indexed by code; 0 without votes
+    public synchronized double[] averageRatingBy(Facet facet) {
+        int[] codes = facetCodes[facet.ordinal()];
+        int size = facet.dictionary.size();
+        long[] votes = new long[size];
+        long[] sums = new long[size];
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            votes[codes[row]] += totalRatings[row];
+            sums[codes[row]] += ratingSum[row];
+        }
+        double[] averages = new double[size];
+        for (int code = 0; code < size; code++) {
+            averages[code] = votes[code] > 0 ? (double) sums[code] / votes[code] : 0;
+        }
+        return averages;
+    }
+
+    // The dashboard figures, all taken from the same state of the catalog
+    public synchronized CatalogStats statistics(long recentSince) {
+        long votes = 0;
+        long sum = 0;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            votes += totalRatings[row];
+            sum += ratingSum[row];
+        }
+        int[] counts = countBy(Facet.CUISINE);
+        double[] averages = averageRatingBy(Facet.CUISINE);
+        List<CatalogStats.FacetCount> cuisines = new ArrayList<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                cuisines.add(new CatalogStats.FacetCount(Facet.CUISINE.dictionary.valueOf(code), counts[code],
+                        averages[code]));
+            }
+        }
+        return new CatalogStats(count(), countApproved(), countCreatedSince(recentSince), votes, sum,
+                totalTimeHistogram(CatalogStats.TIME_BUCKET_MINUTES, CatalogStats.TIME_BUCKETS), cuisines);
+    }
+}
@@ -0,0 +1,138 @@
+package com.recipe.dao;
+
+import com.recipe.util.IdGenerator;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aggregate figures over the whole catalog, for the admin dashboard. Facet values are
+ * the case-folded dictionary values, so spellings that differ only in case are counted
+ * together.
+ */
+public class CatalogStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int TIME_BUCKET_MINUTES = 15;
+    public static final int TIME_BUCKETS = 8;
+    public static final int RECENT_DAYS = 7;
+
+    public static class FacetCount implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+        private final int recipes;
+        private final double averageRating;
+
+        public FacetCount(String value, int recipes, double averageRating) {
+            this.value = value;
+            this.recipes = recipes;
+            this.averageRating = averageRating;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public int getRecipes() {
+            return recipes;
+        }
+
+        public double getAverageRating() {
+            return averageRating;
+        }
+    }
+
+    public static class TimeBucket implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String label;
+        private final int recipes;
+
+        TimeBucket(String label, int recipes) {
+            this.label = label;
+            this.recipes = recipes;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int getRecipes() {
+            return recipes;
+        }
+    }
+
+    private final int totalRecipes;
+    private final int approvedRecipes;
+    private final int recentRecipes;
+    private final long totalRatings;
+    private final long ratingSum;
+    private final int[] totalTimeHistogram;
+    private final List<FacetCount> cuisines;
+
+    public CatalogStats(int totalRecipes, int approvedRecipes, int recentRecipes, long totalRatings, long ratingSum,
+                        int[] totalTimeHistogram, List<FacetCount> cuisines) {
+        this.totalRecipes = totalRecipes;
+        this.approvedRecipes = approvedRecipes;
+        this.recentRecipes = recentRecipes;
+        this.totalRatings = totalRatings;
+        this.ratingSum = ratingSum;
+        this.totalTimeHistogram = totalTimeHistogram;
+        List<FacetCount> sorted = new ArrayList<>(cuisines);
+        sorted.sort(Comparator.comparingInt(FacetCount::getRecipes).reversed()
+                .thenComparing(FacetCount::getValue));
+        this.cuisines = Collections.unmodifiableList(sorted);
+    }
+
+    // Order key from which a recipe counts as recent, see IdGenerator.sortKeyOf
+    public static long recentSince() {
+        return IdGenerator.sortKeyOf(LocalDateTime.now().minusDays(RECENT_DAYS).toString());
+    }
+
+    public int getTotalRecipes() {
+        return totalRecipes;
+    }
+
+    public int getApprovedRecipes() {
+        return approvedRecipes;
+    }
+
+    public int getPendingRecipes() {
+        return totalRecipes - approvedRecipes;
+    }
+
+    // Created within the last RECENT_DAYS days
+    public int getRecentRecipes() {
+        return recentRecipes;
+    }
+
+    public long getTotalRatings() {
+        return totalRatings;
+    }
+
+    public double getAverageRating() {
+        return totalRatings > 0 ? (double) ratingSum / totalRatings : 0;
+    }
+
+    // Recipes per TIME_BUCKET_MINUTES of total time; the last bucket is open-ended
+    public List<TimeBucket> getTotalTimeHistogram() {
+        List<TimeBucket> buckets = new ArrayList<>(totalTimeHistogram.length);
+        for (int i = 0; i < totalTimeHistogram.length; i++) {
+            int from = i * TIME_BUCKET_MINUTES;
+            String label = i < totalTimeHistogram.length - 1
+                    ? from + "-" + (from + TIME_BUCKET_MINUTES - 1) + " min"
+                    : from + "+ min";
+            buckets.add(new TimeBucket(label, totalTimeHistogram[i]));
+        }
+        return buckets;
+    }
+
+    // Most common first
+    public List<FacetCount> getCuisines() {
+        return cuisines;
+    }
+}
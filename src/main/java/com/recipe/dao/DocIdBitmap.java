@@ -0,0 +1,473 @@
+package com.recipe.dao;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of doc ids, laid out like a Roaring bitmap: ids are split into chunks
+ * of 65536 by their high 16 bits, and each chunk stores its low 16 bits either as a
+ * sorted array (up to 4096 ids, two bytes each) or as a 8 KB bit array, whichever is
+ * smaller. A sparse set such as one author's recipes stays a few bytes per id, a dense
+ * one such as the approved recipes one bit per doc id, and union and intersection work
+ * chunk by chunk on arrays and words.
+ *
+ * <p>Bitmaps are immutable: {@link #with} and {@link #without} return a new bitmap that
+ * shares every untouched chunk, so an index can publish one through a volatile field
+ * and readers use it without locking.
+ */
+public final class DocIdBitmap extends AbstractCollection<Integer> {
+    public static final DocIdBitmap EMPTY = new DocIdBitmap(new char[0], new Container[0]);
+
+    // Past this many ids a bit array is smaller than a sorted array
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int WORDS = 1024;
+
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        // This container if the id is already there
+        abstract Container with(char low);
+
+        // Null once the last id is removed
+        abstract Container without(char low);
+
+        abstract Container or(Container other);
+
+        // Null when nothing is in both
+        abstract Container and(Container other);
+
+        abstract void forEach(int high, IntConsumer action);
+    }
+
+    private static final class ArrayContainer extends Container {
+        final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, low) >= 0;
+        }
+
+        @Override
+        Container with(char low) {
+            int at = Arrays.binarySearch(values, low);
+            if (at >= 0) {
+                return this;
+            }
+            at = -at - 1;
+            if (values.length == MAX_ARRAY_SIZE) {
+                return toBitmap().with(low);
+            }
+            char[] grown = new char[values.length + 1];
+            System.arraycopy(values, 0, grown, 0, at);
+            grown[at] = low;
+            System.arraycopy(values, at, grown, at + 1, values.length - at);
+            return new ArrayContainer(grown);
+        }
+
+        @Override
+        Container without(char low) {
+            int at = Arrays.binarySearch(values, low);
+            if (at < 0) {
+                return this;
+            }
+            if (values.length == 1) {
+                return null;
+            }
+            char[] shrunk = new char[values.length - 1];
+            System.arraycopy(values, 0, shrunk, 0, at);
+            System.arraycopy(values, at + 1, shrunk, at, shrunk.length - at);
+            return new ArrayContainer(shrunk);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            char[] those = ((ArrayContainer) other).values;
+            char[] merged = new char[values.length + those.length];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < values.length && j < those.length) {
+                if (values[i] < those[j]) {
+                    merged[n++] = values[i++];
+                } else if (values[i] > those[j]) {
+                    merged[n++] = those[j++];
+                } else {
+                    merged[n++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < values.length) {
+                merged[n++] = values[i++];
+            }
+            while (j < those.length) {
+                merged[n++] = those[j++];
+            }
+            ArrayContainer union = new ArrayContainer(Arrays.copyOf(merged, n));
+            return n > MAX_ARRAY_SIZE ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] common = new char[values.length];
+            int n = 0;
+            if (other instanceof BitmapContainer) {
+                for (char value : values) {
+                    if (other.contains(value)) {
+                        common[n++] = value;
+                    }
+                }
+            } else {
+                char[] those = ((ArrayContainer) other).values;
+                int i = 0;
+                int j = 0;
+                while (i < values.length && j < those.length) {
+                    if (values[i] < those[j]) {
+                        i++;
+                    } else if (values[i] > those[j]) {
+                        j++;
+                    } else {
+                        common[n++] = values[i++];
+                        j++;
+                    }
+                }
+            }
+            return n == 0 ? null : new ArrayContainer(Arrays.copyOf(common, n));
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (char value : values) {
+                action.accept(high | value);
+            }
+        }
+
+        BitmapContainer toBitmap() {
+            long[] words = new long[WORDS];
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return new BitmapContainer(words, values.length);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+        final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container with(char low) {
+            if (contains(low)) {
+                return this;
+            }
+            long[] copy = words.clone();
+            copy[low >>> 6] |= 1L << low;
+            return new BitmapContainer(copy, cardinality + 1);
+        }
+
+        @Override
+        Container without(char low) {
+            if (!contains(low)) {
+                return this;
+            }
+            long[] copy = words.clone();
+            copy[low >>> 6] &= ~(1L << low);
+            return shrink(copy, cardinality - 1);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] union = words.clone();
+            if (other instanceof BitmapContainer) {
+                long[] those = ((BitmapContainer) other).words;
+                for (int i = 0; i < WORDS; i++) {
+                    union[i] |= those[i];
+                }
+            } else {
+                for (char value : ((ArrayContainer) other).values) {
+                    union[value >>> 6] |= 1L << value;
+                }
+            }
+            return new BitmapContainer(union, count(union));
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] those = ((BitmapContainer) other).words;
+            long[] common = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                common[i] = words[i] & those[i];
+            }
+            int n = count(common);
+            return n == 0 ? null : shrink(common, n);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private static Container shrink(long[] words, int cardinality) {
+            if (cardinality > MAX_ARRAY_SIZE) {
+                return new BitmapContainer(words, cardinality);
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[n++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        private static int count(long[] words) {
+            int n = 0;
+            for (long word : words) {
+                n += Long.bitCount(word);
+            }
+            return n;
+        }
+    }
+
+    // High 16 bits of each chunk, ascending, and the chunk's low bits at the same position
+    private final char[] keys;
+    private final Container[] containers;
+    private final int cardinality;
+
+    private DocIdBitmap(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        int n = 0;
+        for (Container container : containers) {
+            n += container.cardinality();
+        }
+        this.cardinality = n;
+    }
+
+    // Doc ids in any order; duplicates are ignored. Built chunk by chunk, not id by id
+    public static DocIdBitmap of(Collection<Integer> docIds) {
+        int[] sorted = new int[docIds.size()];
+        int n = 0;
+        for (int docId : docIds) {
+            sorted[n++] = docId;
+        }
+        Arrays.sort(sorted);
+        char[] keys = new char[n];
+        Container[] containers = new Container[n];
+        int chunks = 0;
+        char[] values = new char[Math.min(n, 65536)];
+        for (int from = 0; from < n; ) {
+            char key = high(sorted[from]);
+            int count = 0;
+            int to = from;
+            for (; to < n && high(sorted[to]) == key; to++) {
+                if (count == 0 || values[count - 1] != (char) sorted[to]) {
+                    values[count++] = (char) sorted[to];
+                }
+            }
+            ArrayContainer chunk = new ArrayContainer(Arrays.copyOf(values, count));
+            keys[chunks] = key;
+            containers[chunks++] = count > MAX_ARRAY_SIZE ? chunk.toBitmap() : chunk;
+            from = to;
+        }
+        return new DocIdBitmap(Arrays.copyOf(keys, chunks), Arrays.copyOf(containers, chunks));
+    }
+
+    public boolean contains(int docId) {
+        int at = Arrays.binarySearch(keys, high(docId));
+        return at >= 0 && containers[at].contains((char) docId);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    public DocIdBitmap with(int docId) {
+        char key = high(docId);
+        int at = Arrays.binarySearch(keys, key);
+        if (at >= 0) {
+            Container updated = containers[at].with((char) docId);
+            if (updated == containers[at]) {
+                return this;
+            }
+            Container[] copy = containers.clone();
+            copy[at] = updated;
+            return new DocIdBitmap(keys, copy);
+        }
+        at = -at - 1;
+        char[] grownKeys = new char[keys.length + 1];
+        Container[] grown = new Container[containers.length + 1];
+        System.arraycopy(keys, 0, grownKeys, 0, at);
+        System.arraycopy(containers, 0, grown, 0, at);
+        grownKeys[at] = key;
+        grown[at] = new ArrayContainer(new char[] {(char) docId});
+        System.arraycopy(keys, at, grownKeys, at + 1, keys.length - at);
+        System.arraycopy(containers, at, grown, at + 1, containers.length - at);
+        return new DocIdBitmap(grownKeys, grown);
+    }
+
+    public DocIdBitmap without(int docId) {
+        int at = Arrays.binarySearch(keys, high(docId));
+        if (at < 0) {
+            return this;
+        }
+        Container updated = containers[at].without((char) docId);
+        if (updated == containers[at]) {
+            return this;
+        }
+        if (updated != null) {
+            Container[] copy = containers.clone();
+            copy[at] = updated;
+            return new DocIdBitmap(keys, copy);
+        }
+        char[] shrunkKeys = new char[keys.length - 1];
+        Container[] shrunk = new Container[containers.length - 1];
+        System.arraycopy(keys, 0, shrunkKeys, 0, at);
+        System.arraycopy(containers, 0, shrunk, 0, at);
+        System.arraycopy(keys, at + 1, shrunkKeys, at, shrunkKeys.length - at);
+        System.arraycopy(containers, at + 1, shrunk, at, shrunk.length - at);
+        return new DocIdBitmap(shrunkKeys, shrunk);
+    }
+
+    public DocIdBitmap or(DocIdBitmap other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        char[] unionKeys = new char[keys.length + other.keys.length];
+        Container[] union = new Container[unionKeys.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                unionKeys[n] = keys[i];
+                union[n++] = containers[i++];
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                unionKeys[n] = other.keys[j];
+                union[n++] = other.containers[j++];
+            } else {
+                unionKeys[n] = keys[i];
+                union[n++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new DocIdBitmap(Arrays.copyOf(unionKeys, n), Arrays.copyOf(union, n));
+    }
+
+    public DocIdBitmap and(DocIdBitmap other) {
+        char[] commonKeys = new char[Math.min(keys.length, other.keys.length)];
+        Container[] common = new Container[commonKeys.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container both = containers[i++].and(other.containers[j++]);
+                if (both != null) {
+                    commonKeys[n] = keys[i - 1];
+                    common[n++] = both;
+                }
+            }
+        }
+        return n == 0 ? EMPTY : new DocIdBitmap(Arrays.copyOf(commonKeys, n), Arrays.copyOf(common, n));
+    }
+
+    // Every doc id in ascending order, without boxing
+    public void forEachDocId(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    @Override
+    public int size() {
+        return cardinality;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    // Ascending order
+    @Override
+    public Iterator<Integer> iterator() {
+        int[] docIds = new int[cardinality];
+        int[] n = new int[1];
+        forEachDocId(docId -> docIds[n[0]++] = docId);
+        return new Iterator<Integer>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < docIds.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (next == docIds.length) {
+                    throw new NoSuchElementException();
+                }
+                return docIds[next++];
+            }
+        };
+    }
+
+    private static char high(int docId) {
+        return (char) (docId >>> 16);
+    }
+}
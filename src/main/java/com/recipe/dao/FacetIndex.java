@@ -0,0 +1,62 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.util.AttributeDictionary;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Hash index from an attribute value (category, cuisine type, ...) to the doc ids of the
+ * recipes carrying it. Values are keyed by their {@link AttributeDictionary} code, which
+ * ignores case, so maintaining and probing the index compares ints, not strings. Posting
+ * sets are {@link DocIdBitmap}s, which iterate in doc id order, which is catalog order,
+ * so results need no further sorting and intersect cheaply with other predicates.
+ */
+public class FacetIndex {
+    private final Function<Recipe, String> attribute;
+    private final AttributeDictionary dictionary;
+    private final Map<Integer, DocIdBitmap> postings = new ConcurrentHashMap<>();
+
+    public FacetIndex(Function<Recipe, String> attribute, AttributeDictionary dictionary) {
+        this.attribute = attribute;
+        this.dictionary = dictionary;
+    }
+
+    // The case-folded form the SQL store keys facet columns by
+    public static String normalize(String value) {
+        return AttributeDictionary.fold(value);
+    }
+
+    public void add(int docId, Recipe recipe) {
+        postings.compute(dictionary.code(attribute.apply(recipe)),
+                (code, docIds) -> (docIds != null ? docIds : DocIdBitmap.EMPTY).with(docId));
+    }
+
+    public void remove(int docId, Recipe recipe) {
+        postings.computeIfPresent(dictionary.code(attribute.apply(recipe)), (code, docIds) -> {
+            DocIdBitmap remaining = docIds.without(docId);
+            return remaining.isEmpty() ? null : remaining;
+        });
+    }
+
+    public void update(int docId, Recipe previous, Recipe current) {
+        if (dictionary.code(attribute.apply(previous)) != dictionary.code(attribute.apply(current))) {
+            remove(docId, previous);
+            add(docId, current);
+        }
+    }
+
+    public DocIdBitmap get(String value) {
+        return value == null ? DocIdBitmap.EMPTY : get(dictionary.lookup(value));
+    }
+
+    public DocIdBitmap get(int code) {
+        DocIdBitmap docIds = postings.get(code);
+        return docIds != null ? docIds : DocIdBitmap.EMPTY;
+    }
+
+    public int count(String value) {
+        return get(value).size();
+    }
+}
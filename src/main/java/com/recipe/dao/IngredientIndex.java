@@ -0,0 +1,144 @@
+package com.recipe.dao;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from ingredient to the recipes using it, for "what can I cook with
+ * these" queries. Ingredient names are reduced to a key of stemmed tokens, so "Tomatoes"
+ * and "tomato" are the same ingredient. An ingredient the user has covers every recipe
+ * ingredient whose key contains all of its terms: "olive oil" covers "extra virgin
+ * olive oil", but not "sesame oil". Terms map to keys rather than recipes, so a lookup
+ * touches the small vocabulary of distinct ingredients and then only the posting
+ * bitmaps of the covered ones.
+ */
+public class IngredientIndex {
+    // ingredient key -> doc ids of the recipes using it
+    private final Map<String, DocIdBitmap> postings = new ConcurrentHashMap<>();
+    // term -> ingredient keys containing it
+    private final Map<String, Set<String>> keysByTerm = new ConcurrentHashMap<>();
+    // doc id -> number of distinct ingredients
+    private final Map<Integer, Integer> ingredientCounts = new ConcurrentHashMap<>();
+
+    // Distinct stemmed tokens of an ingredient name, in order
+    static List<String> terms(String name) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String token : TextIndex.tokenize(name)) {
+            terms.add(stem(token));
+        }
+        return new ArrayList<>(terms);
+    }
+
+    // Distinct ingredients of the recipe by key, with the terms of each
+    static Map<String, List<String>> keys(Recipe recipe) {
+        Map<String, List<String>> keys = new LinkedHashMap<>();
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            List<String> terms = terms(ingredient.getName());
+            if (!terms.isEmpty()) {
+                keys.putIfAbsent(String.join(" ", terms), terms);
+            }
+        }
+        return keys;
+    }
+
+    // Plural endings only; both sides are stemmed alike, so the stem need not be a word
+    private static String stem(String token) {
+        int length = token.length();
+        if (length > 4 && token.endsWith("ies")) {
+            return token.substring(0, length - 3) + "y";
+        }
+        if (length > 4 && (token.endsWith("oes") || token.endsWith("ches") || token.endsWith("shes")
+                || token.endsWith("sses") || token.endsWith("xes"))) {
+            return token.substring(0, length - 2);
+        }
+        if (length > 3 && token.endsWith("s") && !token.endsWith("ss") && !token.endsWith("us")
+                && !token.endsWith("is")) {
+            return token.substring(0, length - 1);
+        }
+        return token;
+    }
+
+    public void add(int docId, Recipe recipe) {
+        Map<String, List<String>> keys = keys(recipe);
+        for (Map.Entry<String, List<String>> key : keys.entrySet()) {
+            postings.compute(key.getKey(), (k, docIds) -> {
+                if (docIds == null) {
+                    for (String term : key.getValue()) {
+                        keysByTerm.computeIfAbsent(term, t -> ConcurrentHashMap.newKeySet()).add(k);
+                    }
+                    docIds = DocIdBitmap.EMPTY;
+                }
+                return docIds.with(docId);
+            });
+        }
+        ingredientCounts.put(docId, keys.size());
+    }
+
+    public void remove(int docId, Recipe recipe) {
+        for (Map.Entry<String, List<String>> key : keys(recipe).entrySet()) {
+            postings.computeIfPresent(key.getKey(), (k, docIds) -> {
+                DocIdBitmap remaining = docIds.without(docId);
+                if (!remaining.isEmpty()) {
+                    return remaining;
+                }
+                for (String term : key.getValue()) {
+                    keysByTerm.computeIfPresent(term, (t, termKeys) -> {
+                        termKeys.remove(k);
+                        return termKeys.isEmpty() ? null : termKeys;
+                    });
+                }
+                return null;
+            });
+        }
+        ingredientCounts.remove(docId);
+    }
+
+    public void update(int docId, Recipe previous, Recipe current) {
+        if (!keys(previous).keySet().equals(keys(current).keySet())) {
+            remove(docId, previous);
+            add(docId, current);
+        }
+    }
+
+    public int ingredientCount(int docId) {
+        Integer count = ingredientCounts.get(docId);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * How many of each recipe's distinct ingredients the given ones cover, by doc id.
+     * Recipes that use none of them are absent.
+     */
+    public Map<Integer, Integer> coverage(Collection<String> ingredients) {
+        Set<String> covered = new HashSet<>();
+        for (String ingredient : ingredients) {
+            Set<String> matching = null;
+            for (String term : terms(ingredient)) {
+                Set<String> keys = keysByTerm.getOrDefault(term, Set.of());
+                if (matching == null) {
+                    matching = new HashSet<>(keys);
+                } else {
+                    matching.retainAll(keys);
+                }
+            }
+            if (matching != null) {
+                covered.addAll(matching);
+            }
+        }
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (String key : covered) {
+            postings.getOrDefault(key, DocIdBitmap.EMPTY).forEachDocId(docId -> counts.merge(docId, 1, Integer::sum));
+        }
+        return counts;
+    }
+}
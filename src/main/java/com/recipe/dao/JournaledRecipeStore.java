@@ -0,0 +1,157 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import com.recipe.util.RecipeEditor;
+import com.recipe.util.ReviewManager;
+import com.recipe.util.XMLRecipeManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * The resident catalog of {@link XMLRecipeManager}: snapshot plus journal, fully held in
+ * memory. Queries are planned over a {@link RecipeIndex} kept current by change
+ * notifications, and reports are computed over a {@link CatalogColumns} mirror kept the
+ * same way. The snapshot is recipes.xml, or recipes.bin when the store is selected
+ * as "binary" (see {@link RecipeStores}).
+ *
+ * <p>The catalog and the indexes hold shared instances, so every recipe handed out is a
+ * copy, as the {@link RecipeStore} contract promises; copies of lazily decoded records
+ * stay lazy.
+ */
+public class JournaledRecipeStore implements RecipeStore {
+    private final RecipeIndex index = new RecipeIndex();
+    private final RecipeQueryPlanner planner = new RecipeQueryPlanner(index, this::summarize);
+    private final CatalogColumns columns = new CatalogColumns();
+
+    public JournaledRecipeStore() {
+        XMLRecipeManager.addChangeListener(index);
+        XMLRecipeManager.addChangeListener(columns);
+        moveEmbeddedReviews();
+    }
+
+    // Reviews from before the review log existed go there once and leave the recipe record
+    private void moveEmbeddedReviews() {
+        int moved = 0;
+        Map<String, CompletableFuture<Void>> cleared = new LinkedHashMap<>();
+        for (Recipe recipe : XMLRecipeManager.getAllRecipes()) {
+            if (recipe.getReviews().isEmpty()) {
+                continue;
+            }
+            try {
+                moved += ReviewManager.importEmbeddedReviews(recipe);
+                cleared.put(recipe.getId(), XMLRecipeManager.mergeRecipeAsync(recipe.getId(), r -> r.getReviews().clear()));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        // Submitted together so they share commit batches; the store is ready once all are in
+        for (Map.Entry<String, CompletableFuture<Void>> entry : cleared.entrySet()) {
+            try {
+                entry.getValue().join();
+            } catch (CompletionException e) {
+                // The reviews are logged either way; the next start clears the record again
+                System.err.println("Could not clear the embedded reviews of recipe " + entry.getKey());
+                e.getCause().printStackTrace();
+            }
+        }
+        if (moved > 0) {
+            System.out.println("Moved " + moved + " embedded reviews to the review log");
+        }
+    }
+
+    private RecipeSummary summarize(Recipe recipe) {
+        RecipeSummary summary = XMLRecipeManager.getRecipeSummary(recipe.getId());
+        // Deleted since the index handed it out
+        return summary != null ? summary : new RecipeSummary(recipe);
+    }
+
+    private static List<Recipe> copies(List<Recipe> shared) {
+        List<Recipe> copies = new ArrayList<>(shared.size());
+        for (Recipe recipe : shared) {
+            copies.add(recipe.copy());
+        }
+        return copies;
+    }
+
+    @Override
+    public List<Recipe> findAll() {
+        return copies(XMLRecipeManager.getAllRecipes());
+    }
+
+    @Override
+    public Recipe findById(String id) {
+        return XMLRecipeManager.getRecipeById(id);
+    }
+
+    @Override
+    public List<RecipeSummary> findAllSummaries() {
+        return XMLRecipeManager.getAllRecipeSummaries();
+    }
+
+    @Override
+    public RecipeSummary findSummary(String id) {
+        return XMLRecipeManager.getRecipeSummary(id);
+    }
+
+    @Override
+    public void save(Recipe recipe) throws Exception {
+        XMLRecipeManager.saveRecipe(recipe);
+    }
+
+    @Override
+    public Recipe modify(String id, RecipeEditor editor) throws Exception {
+        return XMLRecipeManager.modifyRecipe(id, editor);
+    }
+
+    @Override
+    public void update(String id, Consumer<Recipe> change) throws Exception {
+        XMLRecipeManager.updateRecipe(id, change);
+    }
+
+    @Override
+    public void delete(String id) throws Exception {
+        XMLRecipeManager.deleteRecipe(id);
+    }
+
+    @Override
+    public void recordRating(String recipeId, int stars) {
+        XMLRecipeManager.recordRating(recipeId, stars);
+    }
+
+    @Override
+    public int[] getPendingRatings(String recipeId) {
+        return XMLRecipeManager.getPendingRatings(recipeId);
+    }
+
+    @Override
+    public List<Recipe> query(RecipeQuery query) {
+        return copies(planner.execute(query));
+    }
+
+    @Override
+    public RecipePage page(RecipeQuery query, RecipeSort sort, String cursor, int offset, int limit) {
+        return planner.page(query, sort, cursor, offset, limit);
+    }
+
+    @Override
+    public List<Recipe> cookWith(RecipeQuery query, Collection<String> ingredients) {
+        return copies(planner.cookWith(query, ingredients));
+    }
+
+    @Override
+    public CatalogStats statistics() {
+        return columns.statistics(CatalogStats.recentSince());
+    }
+
+    @Override
+    public void shutdown() {
+        XMLRecipeManager.shutdown();
+    }
+}
@@ -1,118 +1,232 @@
 package com.recipe.dao;
 
 import com.recipe.model.Recipe;
-import com.recipe.util.XMLRecipeManager;
+import com.recipe.model.RecipeSummary;
+import com.recipe.model.Review;
+import com.recipe.util.IdGenerator;
+import com.recipe.util.RecipeEditor;
+import com.recipe.util.ReviewManager;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class RecipeDAO {
+    private final RecipeStore store;
+
+    // The store configured for the application, see RecipeStores
+    public RecipeDAO() {
+        this(RecipeStores.get());
+    }
+
+    public RecipeDAO(RecipeStore store) {
+        this.store = store;
+    }
     
     public List<Recipe> getAllRecipes() {
-        return XMLRecipeManager.getAllRecipes();
+        return store.findAll();
     }
 
     public List<Recipe> getApprovedRecipes() {
-        return getAllRecipes().stream()
-                .filter(Recipe::isApproved)
-                .collect(Collectors.toList());
+        return query(RecipeQuery.approvedOnly());
     }
 
+    // Approved recipes plus the user's own, even if not approved yet
     public List<Recipe> getRecipesForUser(String userId) {
-        return getAllRecipes().stream()
-                .filter(r -> {
-                    // Show approved recipes to everyone
-                    if (r.isApproved()) {
-                        return true;
-                    }
-                    // Show user's own recipes even if not approved
-                    if (userId != null && !userId.isEmpty() && 
-                        r.getUserId() != null && !r.getUserId().isEmpty() && 
-                        userId.equals(r.getUserId())) {
-                        return true;
-                    }
-                    return false;
-                })
-                .collect(Collectors.toList());
+        return query(RecipeQuery.visibleTo(userId));
+    }
+
+    // List pages only need the summaries; the full record is for viewing and editing
+    public List<RecipeSummary> getAllRecipeSummaries() {
+        return store.findAllSummaries();
+    }
+
+    public RecipeSummary getRecipeSummary(String id) {
+        return store.findSummary(id);
     }
 
     public Recipe getRecipeById(String id) {
-        return XMLRecipeManager.getRecipeById(id);
+        return store.findById(id);
+    }
+
+    // For display: includes the ratings recorded since the last flush
+    public Recipe getRecipeForView(String id) {
+        Recipe recipe = store.findById(id);
+        if (recipe != null) {
+            int[] pendingVotes = store.getPendingRatings(id);
+            if (pendingVotes != null) {
+                recipe.addRatings(pendingVotes);
+            }
+        }
+        return recipe;
     }
 
+    public void rateRecipe(String recipeId, int stars) {
+        store.recordRating(recipeId, stars);
+    }
+
+    public void addReview(String recipeId, Review review) throws Exception {
+        if (review.getRating() < 1 || review.getRating() > 5) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5: " + review.getRating());
+        }
+        if (getRecipeSummary(recipeId) == null) {
+            return;
+        }
+        review.setRecipeId(recipeId);
+        ReviewManager.addReview(review);
+        store.recordRating(recipeId, review.getRating());
+    }
+
+    /**
+     * Newest reviews of a recipe first. The cursor comes from the previous page's
+     * {@link ReviewPage#getNextCursor()}; null or unreadable starts at the newest.
+     */
+    public ReviewPage getReviewPage(String recipeId, String cursor, int limit) throws IOException {
+        int before = -1;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                before = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                // start from the newest
+            }
+        }
+        int total = ReviewManager.countReviews(recipeId);
+        int end = (before >= 0 && before < total) ? before : total;
+        List<Review> reviews = ReviewManager.getReviews(recipeId, end, limit);
+        int start = end - reviews.size();
+        return new ReviewPage(reviews, total, start > 0 ? String.valueOf(start) : null);
+    }
+
+    /**
+     * Saves the recipe if it is still at the version it was read at, and throws
+     * {@link com.recipe.util.RecipeConflictException} otherwise. Rating tallies are not
+     * taken from the caller's copy; they only change through {@link #rateRecipe}.
+     */
     public void saveRecipe(Recipe recipe) throws Exception {
         if (recipe.getId() == null || recipe.getId().isEmpty()) {
-            recipe.setId(XMLRecipeManager.generateId());
+            recipe.setId(IdGenerator.nextId("RECIPE_"));
         }
         if (recipe.getCreatedAt() == null || recipe.getCreatedAt().isEmpty()) {
             recipe.setCreatedAt(java.time.LocalDateTime.now().toString());
         }
-        XMLRecipeManager.saveRecipe(recipe);
+        store.save(recipe);
+    }
+
+    // Applies the change to whatever version is current; does nothing if the recipe is gone
+    public void updateRecipe(String id, Consumer<Recipe> change) throws Exception {
+        store.update(id, change);
+    }
+
+    /**
+     * Reads, edits and saves the recipe while holding its edit lock, so concurrent edits
+     * of the same recipe are applied one after the other. Returns null if the recipe
+     * does not exist.
+     */
+    public Recipe modifyRecipe(String id, RecipeEditor editor) throws Exception {
+        return store.modify(id, editor);
     }
 
     public void deleteRecipe(String id) throws Exception {
-        XMLRecipeManager.deleteRecipe(id);
+        store.delete(id);
+    }
+
+    // The store evaluates the predicates with its own indexes
+    public List<Recipe> query(RecipeQuery query) {
+        return store.query(query);
+    }
+
+    public RecipePage queryPage(RecipeQuery query, RecipeSort sort, int offset, int limit) {
+        return store.page(query, sort, null, offset, limit);
+    }
+
+    // Keyset paging: continues after the recipe the cursor was issued for
+    public RecipePage queryPage(RecipeQuery query, RecipeSort sort, String cursor, int offset, int limit) {
+        return store.page(query, sort, cursor, offset, limit);
+    }
+
+    /**
+     * "Cook with what I have": the recipes visible to the user (approved only without a
+     * user) that use any of the given ingredients, ranked by the share of their
+     * ingredients covered, so the ones that can be made outright come first.
+     */
+    public List<Recipe> findRecipesByIngredients(Collection<String> ingredients, String userId) {
+        return store.cookWith(RecipeQuery.visibleTo(userId), ingredients);
+    }
+
+    // Aggregates for reporting, computed by the store without loading recipes
+    public CatalogStats getCatalogStats() {
+        return store.statistics();
     }
 
     public List<Recipe> searchRecipes(String query) {
-        String lowerQuery = query.toLowerCase();
-        return getApprovedRecipes().stream()
-                .filter(r -> r.getTitle().toLowerCase().contains(lowerQuery) ||
-                            r.getDescription().toLowerCase().contains(lowerQuery) ||
-                            r.getTags().stream().anyMatch(t -> t.toLowerCase().contains(lowerQuery)) ||
-                            r.getCategory().toLowerCase().contains(lowerQuery))
-                .collect(Collectors.toList());
+        if (query.trim().isEmpty()) {
+            return getApprovedRecipes();
+        }
+        RecipeQuery recipeQuery = RecipeQuery.approvedOnly();
+        recipeQuery.setText(query);
+        return query(recipeQuery);
     }
 
     public List<Recipe> searchRecipes(String query, String userId) {
-        String lowerQuery = query.toLowerCase();
-        return getRecipesForUser(userId).stream()
-                .filter(r -> r.getTitle().toLowerCase().contains(lowerQuery) ||
-                            r.getDescription().toLowerCase().contains(lowerQuery) ||
-                            r.getTags().stream().anyMatch(t -> t.toLowerCase().contains(lowerQuery)) ||
-                            r.getCategory().toLowerCase().contains(lowerQuery))
-                .collect(Collectors.toList());
+        if (query.trim().isEmpty()) {
+            return getRecipesForUser(userId);
+        }
+        RecipeQuery recipeQuery = RecipeQuery.visibleTo(userId);
+        recipeQuery.setText(query);
+        return query(recipeQuery);
     }
 
     public List<Recipe> filterByCategory(String category) {
-        return getApprovedRecipes().stream()
-                .filter(r -> r.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        RecipeQuery query = RecipeQuery.approvedOnly();
+        query.setCategory(category);
+        return facetQuery(category, query);
     }
 
     public List<Recipe> filterByCategory(String category, String userId) {
-        return getRecipesForUser(userId).stream()
-                .filter(r -> r.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        RecipeQuery query = RecipeQuery.visibleTo(userId);
+        query.setCategory(category);
+        return facetQuery(category, query);
     }
 
     public List<Recipe> filterByCuisineType(String cuisineType) {
-        return getApprovedRecipes().stream()
-                .filter(r -> r.getCuisineType().equalsIgnoreCase(cuisineType))
-                .collect(Collectors.toList());
+        RecipeQuery query = RecipeQuery.approvedOnly();
+        query.setCuisineType(cuisineType);
+        return facetQuery(cuisineType, query);
     }
 
     public List<Recipe> filterByCuisineType(String cuisineType, String userId) {
-        return getRecipesForUser(userId).stream()
-                .filter(r -> r.getCuisineType().equalsIgnoreCase(cuisineType))
-                .collect(Collectors.toList());
+        RecipeQuery query = RecipeQuery.visibleTo(userId);
+        query.setCuisineType(cuisineType);
+        return facetQuery(cuisineType, query);
     }
 
     public List<Recipe> filterByDifficulty(String difficulty) {
-        return getApprovedRecipes().stream()
-                .filter(r -> r.getDifficultyLevel().equalsIgnoreCase(difficulty))
-                .collect(Collectors.toList());
+        RecipeQuery query = RecipeQuery.approvedOnly();
+        query.setDifficulty(difficulty);
+        return facetQuery(difficulty, query);
     }
 
     public List<Recipe> filterByDifficulty(String difficulty, String userId) {
-        return getRecipesForUser(userId).stream()
-                .filter(r -> r.getDifficultyLevel().equalsIgnoreCase(difficulty))
-                .collect(Collectors.toList());
+        RecipeQuery query = RecipeQuery.visibleTo(userId);
+        query.setDifficulty(difficulty);
+        return facetQuery(difficulty, query);
+    }
+
+    // A blank facet value matches nothing here, whereas RecipeQuery ignores unset predicates
+    private List<Recipe> facetQuery(String value, RecipeQuery query) {
+        if (!RecipeQuery.isSet(value)) {
+            return new ArrayList<>();
+        }
+        return query(query);
     }
 
     public List<Recipe> getRecipesByUser(String userId) {
-        return getAllRecipes().stream()
-                .filter(r -> r.getUserId().equals(userId))
-                .collect(Collectors.toList());
+        if (!RecipeQuery.isSet(userId)) {
+            return new ArrayList<>();
+        }
+        RecipeQuery query = RecipeQuery.everything();
+        query.setAuthorId(userId);
+        return query(query);
     }
 }
-
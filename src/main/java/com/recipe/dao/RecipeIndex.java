@@ -0,0 +1,197 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.util.AttributeDictionary;
+import com.recipe.util.RecipeChangeListener;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * In-memory indexes over the resident catalog, kept current through
+ * {@link RecipeChangeListener} callbacks. Every recipe gets a dense int doc id in the
+ * order it first appears, so doc id order matches catalog order. Updates come from the
+ * single commit writer thread; reads may run concurrently from any thread.
+ *
+ * <p>Visibility is indexed too: a bitmap of the approved recipes, and per author the
+ * bitmap of their recipes (the authors facet), so what a user may see is one union.
+ * Approval can change both ways, since any save may carry approved=false again, so every
+ * save sets or clears the recipe's bit. A query racing such a save sees the recipe in
+ * either state for that one read.
+ * Each keyset sort order is kept as a sorted set, so a sorted page starts at its cursor.
+ */
+public class RecipeIndex implements RecipeChangeListener {
+    private final Map<String, Integer> docIds = new ConcurrentHashMap<>();
+    private volatile AtomicReferenceArray<Recipe> docs = new AtomicReferenceArray<>(1024);
+    private volatile int nextDocId;
+
+    private final FacetIndex categories = new FacetIndex(Recipe::getCategory, AttributeDictionary.CATEGORIES);
+    private final FacetIndex cuisineTypes = new FacetIndex(Recipe::getCuisineType, AttributeDictionary.CUISINES);
+    private final FacetIndex difficultyLevels =
+            new FacetIndex(Recipe::getDifficultyLevel, AttributeDictionary.DIFFICULTIES);
+    // User ids are not a small vocabulary, so they get a dictionary of their own
+    private final FacetIndex authors = new FacetIndex(Recipe::getUserId, new AttributeDictionary());
+    private final TextIndex text = new TextIndex();
+    private final IngredientIndex ingredients = new IngredientIndex();
+    private volatile DocIdBitmap approved = DocIdBitmap.EMPTY;
+    private final Map<RecipeSort, NavigableSet<Recipe>> sortOrders = new EnumMap<>(RecipeSort.class);
+
+    public RecipeIndex() {
+        for (RecipeSort sort : RecipeSort.values()) {
+            if (sort.supportsCursor()) {
+                sortOrders.put(sort, new ConcurrentSkipListSet<>(sort.comparator()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void recipeSaved(Recipe previous, Recipe current) {
+        Integer docId = docIds.get(current.getId());
+        Recipe old = null;
+        if (docId == null) {
+            docId = allocateDocId(current);
+            categories.add(docId, current);
+            cuisineTypes.add(docId, current);
+            difficultyLevels.add(docId, current);
+            authors.add(docId, current);
+            text.add(docId, current);
+            ingredients.add(docId, current);
+        } else {
+            old = docs.get(docId);
+            docs.set(docId, current);
+            categories.update(docId, old, current);
+            cuisineTypes.update(docId, old, current);
+            difficultyLevels.update(docId, old, current);
+            authors.update(docId, old, current);
+            text.update(docId, old, current);
+            ingredients.update(docId, old, current);
+        }
+        approved = current.isApproved() ? approved.with(docId) : approved.without(docId);
+        for (NavigableSet<Recipe> order : sortOrders.values()) {
+            // Removed first: the new instance may compare equal to the old one
+            if (old != null) {
+                order.remove(old);
+            }
+            order.add(current);
+        }
+    }
+
+    @Override
+    public synchronized void recipeDeleted(Recipe previous) {
+        Integer docId = docIds.remove(previous.getId());
+        if (docId == null) {
+            return;
+        }
+        Recipe old = docs.get(docId);
+        categories.remove(docId, old);
+        cuisineTypes.remove(docId, old);
+        difficultyLevels.remove(docId, old);
+        authors.remove(docId, old);
+        text.remove(docId, old);
+        ingredients.remove(docId, old);
+        approved = approved.without(docId);
+        for (NavigableSet<Recipe> order : sortOrders.values()) {
+            order.remove(old);
+        }
+        docs.set(docId, null);
+    }
+
+    private int allocateDocId(Recipe recipe) {
+        int docId = nextDocId;
+        AtomicReferenceArray<Recipe> current = docs;
+        if (docId >= current.length()) {
+            AtomicReferenceArray<Recipe> grown = new AtomicReferenceArray<>(current.length() * 2);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            current = grown;
+        }
+        current.set(docId, recipe);
+        docs = current;
+        nextDocId = docId + 1;
+        docIds.put(recipe.getId(), docId);
+        return docId;
+    }
+
+    public Recipe get(int docId) {
+        AtomicReferenceArray<Recipe> current = docs;
+        return docId < current.length() ? current.get(docId) : null;
+    }
+
+    // Upper bound (exclusive) of the doc ids handed out so far; deleted ones resolve to null
+    public int docIdLimit() {
+        return nextDocId;
+    }
+
+    // -1 if the recipe is not in the catalog
+    public int docId(String id) {
+        Integer docId = id != null ? docIds.get(id) : null;
+        return docId != null ? docId : -1;
+    }
+
+    public int size() {
+        return docIds.size();
+    }
+
+    /**
+     * Every recipe in the order of a keyset sort, starting after the probe if one is
+     * given. Iteration is weakly consistent: a recipe saved meanwhile may be seen in its
+     * old place, its new one, or both.
+     */
+    public Iterable<Recipe> inOrder(RecipeSort sort, Recipe after) {
+        NavigableSet<Recipe> order = sortOrders.get(sort);
+        return after != null ? order.tailSet(after, false) : order;
+    }
+
+    // Resolves doc ids to recipes, keeping only those accepted by the filter
+    public List<Recipe> resolve(Iterable<Integer> ids, Predicate<Recipe> filter) {
+        List<Recipe> recipes = new ArrayList<>();
+        for (int docId : ids) {
+            Recipe recipe = get(docId);
+            if (recipe != null && filter.test(recipe)) {
+                recipes.add(recipe);
+            }
+        }
+        return recipes;
+    }
+
+    public FacetIndex categories() {
+        return categories;
+    }
+
+    public FacetIndex cuisineTypes() {
+        return cuisineTypes;
+    }
+
+    public FacetIndex difficultyLevels() {
+        return difficultyLevels;
+    }
+
+    public FacetIndex authors() {
+        return authors;
+    }
+
+    public TextIndex text() {
+        return text;
+    }
+
+    public IngredientIndex ingredients() {
+        return ingredients;
+    }
+
+    public DocIdBitmap approved() {
+        return approved;
+    }
+
+    // Approved recipes plus the viewer's own; just the approved ones without a viewer
+    public DocIdBitmap visibleTo(String viewerId) {
+        DocIdBitmap visible = approved;
+        return RecipeQuery.isSet(viewerId) ? visible.or(authors.get(viewerId)) : visible;
+    }
+}
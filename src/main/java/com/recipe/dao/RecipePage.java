@@ -0,0 +1,64 @@
+package com.recipe.dao;
+
+import com.recipe.model.RecipeSummary;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a recipe listing. {@code nextCursor} is set when there is a following page
+ * and the sort order supports keyset paging; otherwise the next page is addressed by
+ * {@code offset + limit}.
+ */
+public class RecipePage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<RecipeSummary> recipes;
+    private final RecipeSort sort;
+    private final int offset;
+    private final int limit;
+    private final boolean hasNext;
+    private final String nextCursor;
+
+    public RecipePage(List<RecipeSummary> recipes, RecipeSort sort, int offset, int limit, boolean hasNext,
+                      String nextCursor) {
+        this.recipes = recipes;
+        this.sort = sort;
+        this.offset = offset;
+        this.limit = limit;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<RecipeSummary> getRecipes() {
+        return recipes;
+    }
+
+    public RecipeSort getSort() {
+        return sort;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public boolean isHasPrevious() {
+        return offset > 0;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    // 1-based page number, for display
+    public int getPageNumber() {
+        return limit > 0 ? offset / limit + 1 : 1;
+    }
+}
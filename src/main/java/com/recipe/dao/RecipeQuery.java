@@ -0,0 +1,138 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import java.io.Serializable;
+
+/**
+ * A set of predicates over the catalog that {@link RecipeDAO#query(RecipeQuery)} evaluates
+ * in one pass. Unset (null or empty) predicates are ignored; every set one must match.
+ * Text, facets, author and visibility (approved recipes OR the viewer's own) are answered
+ * from index bitmaps; time and rating are checked on the candidates the indexes leave.
+ */
+public class RecipeQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String text;
+    private String category;
+    private String cuisineType;
+    private String difficulty;
+    private String authorId;
+    private Integer minTotalTime;
+    private Integer maxTotalTime;
+    private Double minRating;
+    // Visibility: approved recipes, plus the viewer's own unless everything is visible
+    private String viewerId;
+    private boolean includeUnapproved;
+
+    public static RecipeQuery approvedOnly() {
+        return new RecipeQuery();
+    }
+
+    public static RecipeQuery visibleTo(String userId) {
+        RecipeQuery query = new RecipeQuery();
+        query.setViewerId(userId);
+        return query;
+    }
+
+    public static RecipeQuery everything() {
+        RecipeQuery query = new RecipeQuery();
+        query.setIncludeUnapproved(true);
+        return query;
+    }
+
+    // Predicates that no index answers
+    public boolean matchesResidual(Recipe recipe) {
+        if (minTotalTime != null && recipe.getTotalTime() < minTotalTime) {
+            return false;
+        }
+        if (maxTotalTime != null && recipe.getTotalTime() > maxTotalTime) {
+            return false;
+        }
+        return minRating == null || recipe.getAverageRating() >= minRating;
+    }
+
+    static boolean isSet(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    // Getters and Setters
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getCuisineType() {
+        return cuisineType;
+    }
+
+    public void setCuisineType(String cuisineType) {
+        this.cuisineType = cuisineType;
+    }
+
+    public String getDifficulty() {
+        return difficulty;
+    }
+
+    public void setDifficulty(String difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    public String getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(String authorId) {
+        this.authorId = authorId;
+    }
+
+    public Integer getMinTotalTime() {
+        return minTotalTime;
+    }
+
+    public void setMinTotalTime(Integer minTotalTime) {
+        this.minTotalTime = minTotalTime;
+    }
+
+    public Integer getMaxTotalTime() {
+        return maxTotalTime;
+    }
+
+    public void setMaxTotalTime(Integer maxTotalTime) {
+        this.maxTotalTime = maxTotalTime;
+    }
+
+    public Double getMinRating() {
+        return minRating;
+    }
+
+    public void setMinRating(Double minRating) {
+        this.minRating = minRating;
+    }
+
+    public String getViewerId() {
+        return viewerId;
+    }
+
+    public void setViewerId(String viewerId) {
+        this.viewerId = viewerId;
+    }
+
+    public boolean isIncludeUnapproved() {
+        return includeUnapproved;
+    }
+
+    public void setIncludeUnapproved(boolean includeUnapproved) {
+        this.includeUnapproved = includeUnapproved;
+    }
+}
@@ -0,0 +1,243 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Executes a {@link RecipeQuery} against a {@link RecipeIndex}. Every indexed predicate,
+ * visibility included, contributes a {@link DocIdBitmap}; the planner intersects them
+ * smallest first, so the work is bounded by the most selective predicate. Only the
+ * survivors are resolved to recipes and checked against the residual predicates.
+ * Pages walk the matches lazily and stop once full; a sorted page either walks the
+ * index's sort order from its cursor or ranks the matches, whichever visits fewer recipes.
+ */
+public class RecipeQueryPlanner {
+    // Doc ids that satisfy every indexed predicate, with their text scores if the query has text
+    private static class Match {
+        // Null if the query sets no indexed predicate, which every doc id below the limit satisfies
+        final DocIdBitmap docIds;
+        final int docIdLimit;
+        final Map<Integer, Double> scores;
+
+        Match(DocIdBitmap docIds, int docIdLimit, Map<Integer, Double> scores) {
+            this.docIds = docIds;
+            this.docIdLimit = docIdLimit;
+            this.scores = scores;
+        }
+
+        // In doc id (catalog) order, one at a time
+        Iterable<Integer> inCatalogOrder() {
+            return docIds != null ? docIds : () -> IntStream.range(0, docIdLimit).iterator();
+        }
+
+        boolean contains(int docId) {
+            return docIds != null ? docIds.contains(docId) : docId < docIdLimit;
+        }
+
+        int size() {
+            return docIds != null ? docIds.size() : docIdLimit;
+        }
+
+        Comparator<Integer> relevance() {
+            return (a, b) -> {
+                int byScore = Double.compare(scores.get(b), scores.get(a));
+                return byScore != 0 ? byScore : Integer.compare(a, b);
+            };
+        }
+    }
+
+    private final RecipeIndex index;
+    private final Function<Recipe, RecipeSummary> summaries;
+
+    public RecipeQueryPlanner(RecipeIndex index, Function<Recipe, RecipeSummary> summaries) {
+        this.index = index;
+        this.summaries = summaries;
+    }
+
+    // Results are ranked by text relevance when the query has text, else in catalog order
+    public List<Recipe> execute(RecipeQuery query) {
+        Match match = match(query);
+        if (match.scores == null) {
+            return index.resolve(match.inCatalogOrder(), query::matchesResidual);
+        }
+        List<Integer> ranked = new ArrayList<>(match.docIds);
+        ranked.sort(match.relevance());
+        return index.resolve(ranked, query::matchesResidual);
+    }
+
+    /**
+     * Recipes matching the query that use at least one of the given ingredients, those
+     * with the largest share of their ingredients covered first, then those missing the
+     * fewest, then catalog order. Text in the query filters but does not rank.
+     */
+    public List<Recipe> cookWith(RecipeQuery query, Collection<String> ingredients) {
+        Map<Integer, Integer> covered = index.ingredients().coverage(ingredients);
+        DocIdBitmap candidates = DocIdBitmap.of(covered.keySet());
+        DocIdBitmap filter = filter(query, RecipeQuery.isSet(query.getText())
+                ? index.text().search(query.getText()) : null);
+        if (filter != null) {
+            candidates = candidates.and(filter);
+        }
+        List<Integer> ranked = new ArrayList<>(candidates);
+        Map<Integer, Integer> totals = new HashMap<>();
+        for (int docId : ranked) {
+            totals.put(docId, Math.max(index.ingredients().ingredientCount(docId), covered.get(docId)));
+        }
+        ranked.sort((a, b) -> {
+            int byShare = Double.compare((double) covered.get(b) / totals.get(b), (double) covered.get(a) / totals.get(a));
+            if (byShare != 0) {
+                return byShare;
+            }
+            int byMissing = Integer.compare(totals.get(a) - covered.get(a), totals.get(b) - covered.get(b));
+            return byMissing != 0 ? byMissing : Integer.compare(a, b);
+        });
+        return index.resolve(ranked, query::matchesResidual);
+    }
+
+    /**
+     * Returns one page of the query's results in the given order. In catalog order the
+     * matches are walked until the page is full. In a keyset order the index's sorted set
+     * is walked from the cursor until the page is full, unless the matches are so few
+     * that most of that walk would be skipped; then only the best
+     * {@code offset + limit + 1} matches are kept in a bounded heap, as for relevance.
+     * With a cursor from the previous page the offset is not skipped again, only recipes
+     * after the cursor count. Only the recipes on the page are turned into summaries.
+     */
+    public RecipePage page(RecipeQuery query, RecipeSort sort, String cursor, int offset, int limit) {
+        offset = Math.max(0, offset);
+        limit = Math.max(1, limit);
+        Recipe after = sort.decodeCursor(cursor);
+        int skip = after != null ? 0 : offset;
+        // One extra recipe tells whether another page follows
+        int window = (int) Math.min(Integer.MAX_VALUE - 1, (long) skip + limit) + 1;
+
+        Match match = match(query);
+        List<Recipe> ranked;
+        if (sort.comparator() == null && match.scores == null) {
+            ranked = new ArrayList<>(window);
+            for (int docId : match.inCatalogOrder()) {
+                Recipe recipe = index.get(docId);
+                if (recipe != null && query.matchesResidual(recipe)) {
+                    ranked.add(recipe);
+                    if (ranked.size() == window) {
+                        break;
+                    }
+                }
+            }
+        } else if (sort.comparator() == null) {
+            List<Integer> top = top(match.inCatalogOrder(), match.relevance(), window, docId -> {
+                Recipe recipe = index.get(docId);
+                return recipe != null && query.matchesResidual(recipe);
+            });
+            ranked = index.resolve(top, recipe -> true);
+        } else if (walksFewer(match, window)) {
+            ranked = new ArrayList<>(window);
+            Set<String> seen = new HashSet<>();
+            for (Recipe recipe : index.inOrder(sort, after)) {
+                int docId = index.docId(recipe.getId());
+                // Instances replaced by a save during the walk are skipped
+                if (docId >= 0 && index.get(docId) == recipe && match.contains(docId)
+                        && query.matchesResidual(recipe) && seen.add(recipe.getId())) {
+                    ranked.add(recipe);
+                    if (ranked.size() == window) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            Comparator<Recipe> order = sort.comparator();
+            Iterable<Recipe> resolved = () -> match.docIds.stream().map(index::get).iterator();
+            ranked = top(resolved, order, window, recipe -> recipe != null && query.matchesResidual(recipe)
+                    && (after == null || order.compare(recipe, after) > 0));
+        }
+
+        boolean hasNext = ranked.size() > skip + limit;
+        List<RecipeSummary> recipes = new ArrayList<>(limit);
+        for (int i = skip; i < Math.min(ranked.size(), skip + limit); i++) {
+            recipes.add(summaries.apply(ranked.get(i)));
+        }
+        String nextCursor = hasNext && sort.supportsCursor() && !recipes.isEmpty()
+                ? sort.cursorFor(ranked.get(skip + recipes.size() - 1)) : null;
+        return new RecipePage(recipes, sort, offset, limit, hasNext, nextCursor);
+    }
+
+    // The k smallest accepted elements in order, via a max-heap that never holds more than k
+    private static <T> List<T> top(Iterable<T> elements, Comparator<T> order, int k, Predicate<T> accept) {
+        PriorityQueue<T> heap = new PriorityQueue<>(Math.min(k, 1024) + 1, order.reversed());
+        for (T element : elements) {
+            if (!accept.test(element)) {
+                continue;
+            }
+            if (heap.size() == k && order.compare(element, heap.peek()) >= 0) {
+                continue;
+            }
+            heap.add(element);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        List<T> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result;
+    }
+
+    /**
+     * Whether walking the sort order beats ranking the matches. The walk visits about
+     * {@code window * catalog / matches} recipes before the page is full, the ranking
+     * every match once. Without indexed predicates every recipe matches, so the walk wins.
+     */
+    private boolean walksFewer(Match match, int window) {
+        if (match.docIds == null) {
+            return true;
+        }
+        long matches = match.size();
+        return matches * matches >= (long) window * index.size();
+    }
+
+    private Match match(RecipeQuery query) {
+        Map<Integer, Double> scores = RecipeQuery.isSet(query.getText()) ? index.text().search(query.getText()) : null;
+        return new Match(filter(query, scores), index.docIdLimit(), scores);
+    }
+
+    // Doc ids that satisfy every indexed predicate, or null if the query sets none
+    private DocIdBitmap filter(RecipeQuery query, Map<Integer, Double> textScores) {
+        List<DocIdBitmap> sources = new ArrayList<>();
+        if (textScores != null) {
+            sources.add(DocIdBitmap.of(textScores.keySet()));
+        }
+        addFacet(sources, index.categories(), query.getCategory());
+        addFacet(sources, index.cuisineTypes(), query.getCuisineType());
+        addFacet(sources, index.difficultyLevels(), query.getDifficulty());
+        addFacet(sources, index.authors(), query.getAuthorId());
+        if (!query.isIncludeUnapproved()) {
+            sources.add(index.visibleTo(query.getViewerId()));
+        }
+        if (sources.isEmpty()) {
+            return null;
+        }
+        sources.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        DocIdBitmap common = sources.get(0);
+        for (int i = 1; i < sources.size() && !common.isEmpty(); i++) {
+            common = common.and(sources.get(i));
+        }
+        return common;
+    }
+
+    private static void addFacet(List<DocIdBitmap> sources, FacetIndex facet, String value) {
+        if (RecipeQuery.isSet(value)) {
+            sources.add(facet.get(value));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.util.IdGenerator;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Orders a recipe listing can be paged in. Every named order ends with the recipe id as
+ * a tie-breaker, so it is total and stable between requests, and can be resumed from a
+ * keyset cursor holding the sort key of the last recipe on the previous page.
+ * {@link #RELEVANCE} is the planner's natural order (text score, else catalog order)
+ * and is paged by offset only.
+ */
+public enum RecipeSort {
+    RELEVANCE("relevance", null),
+    NEWEST("newest", Comparator.comparingLong(RecipeSort::age).reversed()),
+    TOP_RATED("top-rated", Comparator.comparingDouble(Recipe::getAverageRating).reversed()
+            .thenComparing(Comparator.comparingInt(Recipe::getTotalRatings).reversed())),
+    QUICKEST("quickest", Comparator.comparingInt(Recipe::getTotalTime));
+
+    private static final char SEPARATOR = '\u001f';
+
+    private final String param;
+    private final Comparator<Recipe> comparator;
+
+    RecipeSort(String param, Comparator<Recipe> key) {
+        this.param = param;
+        this.comparator = key != null ? key.thenComparing(RecipeSort::id) : null;
+    }
+
+    // Unknown or missing values fall back to the given default
+    public static RecipeSort fromParam(String value, RecipeSort defaultSort) {
+        if (value != null) {
+            for (RecipeSort sort : values()) {
+                if (sort.param.equalsIgnoreCase(value.trim())) {
+                    return sort;
+                }
+            }
+        }
+        return defaultSort;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    // Null for RELEVANCE, whose order comes from the query itself
+    public Comparator<Recipe> comparator() {
+        return comparator;
+    }
+
+    public boolean supportsCursor() {
+        return comparator != null;
+    }
+
+    public String cursorFor(Recipe last) {
+        String key;
+        switch (this) {
+            case NEWEST:
+                key = createdAt(last);
+                break;
+            case TOP_RATED:
+                // The exact sum, not the rounded average, so the probe compares equal
+                key = last.getRatingSum() + String.valueOf(SEPARATOR) + last.getTotalRatings();
+                break;
+            case QUICKEST:
+                key = String.valueOf(last.getTotalTime());
+                break;
+            default:
+                return null;
+        }
+        String raw = param + SEPARATOR + key + SEPARATOR + id(last);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Rebuilds the sort key carried by a cursor as a probe recipe that compares equal to
+     * the last recipe of the previous page. Returns null if the cursor is missing, was
+     * issued for another order or cannot be read, in which case paging starts over.
+     */
+    public Recipe decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty() || !supportsCursor()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(String.valueOf(SEPARATOR), -1);
+            if (parts.length < 3 || !param.equals(parts[0])) {
+                return null;
+            }
+            Recipe probe = new Recipe();
+            probe.setId(parts[parts.length - 1]);
+            switch (this) {
+                case NEWEST:
+                    probe.setCreatedAt(parts[1]);
+                    break;
+                case TOP_RATED:
+                    if (parts.length != 4) {
+                        return null;
+                    }
+                    probe.setRatingSum(Long.parseLong(parts[1]));
+                    probe.setTotalRatings(Integer.parseInt(parts[2]));
+                    break;
+                case QUICKEST:
+                    probe.setPreparationTime(Integer.parseInt(parts[1]));
+                    probe.setCookingTime(0);
+                    break;
+                default:
+                    return null;
+            }
+            return probe;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Time-ordered ids carry their creation time; older imported ids fall back to createdAt
+    static long age(Recipe recipe) {
+        long key = IdGenerator.sortKey(recipe.getId());
+        return key >= 0 ? key : IdGenerator.sortKeyOf(recipe.getCreatedAt());
+    }
+
+    private static String createdAt(Recipe recipe) {
+        return recipe.getCreatedAt() != null ? recipe.getCreatedAt() : "";
+    }
+
+    private static String id(Recipe recipe) {
+        return recipe.getId() != null ? recipe.getId() : "";
+    }
+}
@@ -0,0 +1,60 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import com.recipe.util.RecipeEditor;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where the recipe catalog lives. {@link RecipeDAO} talks only to this interface, so the
+ * backend can be swapped by configuration (see {@link RecipeStores}) or replaced in
+ * isolation. Every backend answers {@link RecipeQuery} itself, with whatever indexes it
+ * has, instead of handing the DAO the whole catalog to filter.
+ *
+ * <p>Returned recipes are private copies in every backend, so callers may modify them
+ * without affecting the store or each other. Saves are conditional on
+ * {@link Recipe#getVersion()} and fail with {@link com.recipe.util.RecipeConflictException}
+ * when the recipe changed since it was read; rating tallies only change through
+ * {@link #recordRating}.
+ */
+public interface RecipeStore {
+    List<Recipe> findAll();
+
+    Recipe findById(String id);
+
+    List<RecipeSummary> findAllSummaries();
+
+    RecipeSummary findSummary(String id);
+
+    // On success the caller's copy carries the new version
+    void save(Recipe recipe) throws Exception;
+
+    // Read-modify-write under the recipe's edit lock; null if the recipe does not exist
+    Recipe modify(String id, RecipeEditor editor) throws Exception;
+
+    // Applies the change to whatever version is current; nothing happens if the recipe is gone
+    void update(String id, Consumer<Recipe> change) throws Exception;
+
+    void delete(String id) throws Exception;
+
+    void recordRating(String recipeId, int stars);
+
+    // Votes per star recorded but not yet folded into the recipe, or null
+    int[] getPendingRatings(String recipeId);
+
+    // Ranked by text relevance when the query has text, else in catalog order
+    List<Recipe> query(RecipeQuery query);
+
+    RecipePage page(RecipeQuery query, RecipeSort sort, String cursor, int offset, int limit);
+
+    // Recipes matching the query that use any of the ingredients, best covered first
+    List<Recipe> cookWith(RecipeQuery query, Collection<String> ingredients);
+
+    // Counts and averages over every recipe, approved or not
+    CatalogStats statistics();
+
+    // Flushes pending work and releases files, threads and connections
+    void shutdown();
+}
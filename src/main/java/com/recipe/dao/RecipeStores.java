@@ -0,0 +1,60 @@
+package com.recipe.dao;
+
+import java.io.File;
+
+/**
+ * Creates the application's {@link RecipeStore} on first use. The backend is chosen with
+ * the {@code recipe.store} system property:
+ *
+ * <ul>
+ *   <li>{@code xml} (default) - recipes.xml plus journal, held in memory</li>
+ *   <li>{@code binary} - the same, with recipes.bin as the snapshot</li>
+ *   <li>{@code sql} - an embedded database over JDBC; {@code recipe.store.url},
+ *       {@code recipe.store.user} and {@code recipe.store.password} default to an H2
+ *       file database in the data directory</li>
+ * </ul>
+ *
+ * The data directory is {@code recipe.data.dir}, by default {@code data} under the
+ * working directory.
+ */
+public class RecipeStores {
+    private static RecipeStore store;
+
+    public static synchronized RecipeStore get() {
+        if (store == null) {
+            store = create(System.getProperty("recipe.store", "xml").trim().toLowerCase());
+        }
+        return store;
+    }
+
+    private static RecipeStore create(String kind) {
+        switch (kind) {
+            case "xml":
+            case "binary":
+                return new JournaledRecipeStore();
+            case "sql":
+                String defaultUrl = "jdbc:h2:file:" + dataDirectory() + File.separator + "recipes-db";
+                try {
+                    return new SqlRecipeStore(System.getProperty("recipe.store.url", defaultUrl),
+                            System.getProperty("recipe.store.user", "sa"),
+                            System.getProperty("recipe.store.password", ""), new File(dataDirectory()),
+                            Long.getLong("recipe.ratings.flushIntervalMs", 1000L));
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not open the SQL recipe store", e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown recipe.store: " + kind);
+        }
+    }
+
+    static String dataDirectory() {
+        return System.getProperty("recipe.data.dir", System.getProperty("user.dir") + File.separator + "data");
+    }
+
+    public static synchronized void shutdown() {
+        if (store != null) {
+            store.shutdown();
+            store = null;
+        }
+    }
+}
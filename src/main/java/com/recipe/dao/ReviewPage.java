@@ -0,0 +1,35 @@
+package com.recipe.dao;
+
+import com.recipe.model.Review;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of a recipe's reviews, newest first. {@code nextCursor} addresses the older
+ * reviews that follow and is null on the last page.
+ */
+public class ReviewPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Review> reviews;
+    private final int totalReviews;
+    private final String nextCursor;
+
+    public ReviewPage(List<Review> reviews, int totalReviews, String nextCursor) {
+        this.reviews = reviews;
+        this.totalReviews = totalReviews;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Review> getReviews() {
+        return reviews;
+    }
+
+    public int getTotalReviews() {
+        return totalReviews;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
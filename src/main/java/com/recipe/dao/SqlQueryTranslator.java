@@ -0,0 +1,206 @@
+package com.recipe.dao;
+
+import com.recipe.model.Recipe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiles a {@link RecipeQuery}, a {@link RecipeSort} and a page window into a single
+ * SELECT over the tables of {@link SqlRecipeStore}, so that filtering, ordering, keyset
+ * continuation and LIMIT/OFFSET all happen in the database and only the rows on the page
+ * are read. Every value is bound as a parameter; the SQL text depends only on which
+ * predicates are set, the number of search tokens and the order, so it repeats across
+ * requests and the prepared statement can be reused.
+ *
+ * <p>Text matching follows {@link TextIndex}: every token must prefix-match a term of the
+ * recipe. Relevance is the sum over tokens of the best matching term weight; unlike the
+ * resident index there is no BM25 length or rarity adjustment.
+ */
+public class SqlQueryTranslator {
+    // Same value as Recipe.getAverageRating(), so keyset probes compare equal
+    static final String AVERAGE_RATING =
+            "(CASE WHEN total_ratings > 0 THEN CAST(rating_sum AS DOUBLE PRECISION) / total_ratings ELSE 0 END)";
+    private static final String TERM_MATCH = "SELECT recipe_id FROM recipe_terms WHERE term LIKE ?";
+    private static final String TERM_WEIGHT =
+            "COALESCE((SELECT MAX(weight) FROM recipe_terms WHERE recipe_id = recipes.id AND term LIKE ?), 0)";
+
+    public static class SqlQuery {
+        private final String sql;
+        private final List<Object> params;
+
+        SqlQuery(String sql, List<Object> params) {
+            this.sql = sql;
+            this.params = Collections.unmodifiableList(params);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public List<Object> getParams() {
+            return params;
+        }
+    }
+
+    private final StringBuilder where = new StringBuilder();
+    private final List<Object> whereParams = new ArrayList<>();
+    private final List<String> patterns = new ArrayList<>();
+
+    public SqlQueryTranslator(RecipeQuery query) {
+        facet("category_key", query.getCategory());
+        facet("cuisine_key", query.getCuisineType());
+        facet("difficulty_key", query.getDifficulty());
+        facet("author_key", query.getAuthorId());
+        if (!query.isIncludeUnapproved()) {
+            if (RecipeQuery.isSet(query.getViewerId())) {
+                and("(approved = TRUE OR user_id = ?)", query.getViewerId());
+            } else {
+                and("approved = TRUE");
+            }
+        }
+        if (query.getMinTotalTime() != null) {
+            and("total_time >= ?", query.getMinTotalTime());
+        }
+        if (query.getMaxTotalTime() != null) {
+            and("total_time <= ?", query.getMaxTotalTime());
+        }
+        if (query.getMinRating() != null) {
+            and(AVERAGE_RATING + " >= ?", query.getMinRating());
+        }
+        if (RecipeQuery.isSet(query.getText())) {
+            List<String> tokens = TextIndex.tokenize(query.getText());
+            if (tokens.isEmpty()) {
+                and("1 = 0");
+            }
+            // Tokens are letters and digits only, so they need no LIKE escaping
+            for (String token : tokens) {
+                patterns.add(token + "%");
+                and("id IN (" + TERM_MATCH + ")", token + "%");
+            }
+        }
+    }
+
+    /**
+     * The matching rows in the given order, continuing after {@code after} (a cursor probe
+     * from {@link RecipeSort#decodeCursor}) if given, then skipping {@code offset} and
+     * returning at most {@code limit}. A negative limit returns everything and ignores
+     * the offset.
+     */
+    public SqlQuery select(String columns, RecipeSort sort, Recipe after, int offset, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM recipes");
+        List<Object> params = new ArrayList<>(whereParams);
+        StringBuilder conditions = new StringBuilder(where);
+        if (after != null) {
+            conditions.append(conditions.length() == 0 ? " WHERE " : " AND ");
+            keyset(conditions, params, sort, after);
+        }
+        sql.append(conditions).append(" ORDER BY ");
+        switch (sort) {
+            case NEWEST:
+                sql.append("age DESC, id");
+                break;
+            case TOP_RATED:
+                sql.append(AVERAGE_RATING).append(" DESC, total_ratings DESC, id");
+                break;
+            case QUICKEST:
+                sql.append("total_time, id");
+                break;
+            default:
+                if (!patterns.isEmpty()) {
+                    for (int i = 0; i < patterns.size(); i++) {
+                        sql.append(i == 0 ? "" : " + ").append(TERM_WEIGHT);
+                    }
+                    params.addAll(patterns);
+                    sql.append(" DESC, ");
+                }
+                sql.append("seq");
+        }
+        if (limit >= 0) {
+            sql.append(" LIMIT ? OFFSET ?");
+            params.add(limit);
+            params.add(offset);
+        }
+        return new SqlQuery(sql.toString(), params);
+    }
+
+    /**
+     * The matching rows that use any of the given ingredients, ranked as in
+     * {@link RecipeQueryPlanner#cookWith}: largest share of the recipe's ingredients
+     * covered, then fewest missing, then catalog order. An ingredient covers the recipe
+     * ingredients whose terms include all of its own. Null if no ingredient has terms.
+     */
+    public SqlQuery cookWith(String columns, Collection<String> ingredients) {
+        StringBuilder covered = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        for (String ingredient : ingredients) {
+            List<String> terms = IngredientIndex.terms(ingredient);
+            if (terms.isEmpty()) {
+                continue;
+            }
+            covered.append(covered.length() == 0 ? "" : " UNION ")
+                    .append("SELECT recipe_id, ingredient FROM recipe_ingredient_terms WHERE term IN (?");
+            for (int i = 1; i < terms.size(); i++) {
+                covered.append(", ?");
+            }
+            covered.append(") GROUP BY recipe_id, ingredient HAVING COUNT(DISTINCT term) = ?");
+            params.addAll(terms);
+            params.add(terms.size());
+        }
+        if (covered.length() == 0) {
+            return null;
+        }
+        String sql = "SELECT " + columns + " FROM (SELECT c.recipe_id, COUNT(*) AS covered, "
+                + "(SELECT COUNT(DISTINCT t.ingredient) FROM recipe_ingredient_terms t WHERE t.recipe_id = c.recipe_id) "
+                + "AS total FROM (" + covered + ") c GROUP BY c.recipe_id) m JOIN recipes ON recipes.id = m.recipe_id"
+                + where + " ORDER BY CAST(m.covered AS DOUBLE PRECISION) / m.total DESC, m.total - m.covered, seq";
+        params.addAll(whereParams);
+        return new SqlQuery(sql, params);
+    }
+
+    // The ids of all matching rows, for loading their child rows with a subquery
+    public SqlQuery ids() {
+        return new SqlQuery("SELECT id FROM recipes" + where, new ArrayList<>(whereParams));
+    }
+
+    // Rows strictly after the probe in the sort's order; mirrors RecipeSort's comparators
+    private static void keyset(StringBuilder sql, List<Object> params, RecipeSort sort, Recipe after) {
+        switch (sort) {
+            case NEWEST:
+                long age = RecipeSort.age(after);
+                sql.append("(age < ? OR (age = ? AND id > ?))");
+                params.add(age);
+                params.add(age);
+                break;
+            case TOP_RATED:
+                double average = after.getAverageRating();
+                sql.append("(").append(AVERAGE_RATING).append(" < ? OR (").append(AVERAGE_RATING)
+                        .append(" = ? AND (total_ratings < ? OR (total_ratings = ? AND id > ?))))");
+                params.add(average);
+                params.add(average);
+                params.add(after.getTotalRatings());
+                params.add(after.getTotalRatings());
+                break;
+            case QUICKEST:
+                sql.append("(total_time > ? OR (total_time = ? AND id > ?))");
+                params.add(after.getTotalTime());
+                params.add(after.getTotalTime());
+                break;
+            default:
+                throw new IllegalArgumentException("No keyset for " + sort);
+        }
+        params.add(after.getId() != null ? after.getId() : "");
+    }
+
+    private void facet(String column, String value) {
+        if (RecipeQuery.isSet(value)) {
+            and(column + " = ?", FacetIndex.normalize(value));
+        }
+    }
+
+    private void and(String condition, Object... params) {
+        where.append(where.length() == 0 ? " WHERE " : " AND ").append(condition);
+        Collections.addAll(whereParams, params);
+    }
+}
@@ -0,0 +1,840 @@
+package com.recipe.dao;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import com.recipe.util.AttributeDictionary;
+import com.recipe.util.IdGenerator;
+import com.recipe.util.RatingAggregator;
+import com.recipe.util.RecipeCatalogReader;
+import com.recipe.util.RecipeConflictException;
+import com.recipe.util.RecipeEditor;
+import com.recipe.util.ReviewManager;
+import com.recipe.util.StripedLocks;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Recipes in an embedded SQL database reached over JDBC (H2 by default; see
+ * {@link RecipeStores} for the settings). Only the rows a request asks for are read:
+ * lookups go by primary key, and queries are compiled by {@link SqlQueryTranslator} into
+ * one statement that filters, orders and pages in the database over indexed columns and
+ * a term table. Each pooled connection keeps its prepared statements for reuse.
+ *
+ * <p>Facet columns are stored a second time lower-cased ({@code *_key}) so that matching
+ * stays case-insensitive and indexed. Rating tallies are separate counters that votes
+ * increment in place and saves never write, so voting cannot conflict with editing.
+ * On first start the store is seeded from the journaled catalog files if there are any.
+ * Read failures are thrown, not reported as an empty result.
+ */
+public class SqlRecipeStore implements RecipeStore {
+    private interface SqlWork<T> {
+        T run(Session session) throws Exception;
+    }
+
+    /**
+     * A pooled connection with its prepared statements. Statements are keyed by their SQL
+     * text and kept open for reuse; the least recently used one is closed past
+     * {@code STATEMENT_CACHE_SIZE}. Callers must not close what {@link #prepare} returns.
+     */
+    private static class Session {
+        final Connection connection;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() > STATEMENT_CACHE_SIZE) {
+                            closeQuietly(eldest.getValue());
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        Session(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        PreparedStatement prepare(SqlQueryTranslator.SqlQuery query) throws SQLException {
+            PreparedStatement statement = prepare(query.getSql());
+            bind(statement, query.getParams());
+            return statement;
+        }
+
+        // After a failure a statement may hold a half-built batch, so none is reused
+        void discardStatements() {
+            for (PreparedStatement statement : statements.values()) {
+                closeQuietly(statement);
+            }
+            statements.clear();
+        }
+
+        void close() {
+            discardStatements();
+            closeQuietly(connection);
+        }
+    }
+
+    private static final int MAX_EDIT_ATTEMPTS = 5;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    // Ids per child-row lookup; shorter lists are padded so the statement text repeats
+    private static final int MAX_IDS_PER_LOOKUP = 64;
+    private static final String RECIPE_COLUMNS = "id, seq, title, description, cuisine_type, cuisine_key, "
+            + "difficulty_level, difficulty_key, category, category_key, photo_path, user_id, author_key, "
+            + "author_name, preparation_time, cooking_time, total_time, servings, total_ratings, rating_sum, "
+            + "rating_1, rating_2, rating_3, rating_4, rating_5, approved, created_at, age, version";
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS recipes (id VARCHAR(255) PRIMARY KEY, seq BIGINT NOT NULL, "
+                + "title VARCHAR, description VARCHAR, cuisine_type VARCHAR, cuisine_key VARCHAR, "
+                + "difficulty_level VARCHAR, difficulty_key VARCHAR, category VARCHAR, category_key VARCHAR, "
+                + "photo_path VARCHAR, user_id VARCHAR, author_key VARCHAR, author_name VARCHAR, "
+                + "preparation_time INT NOT NULL, cooking_time INT NOT NULL, total_time INT NOT NULL, "
+                + "servings INT NOT NULL, total_ratings INT NOT NULL, rating_sum BIGINT NOT NULL, "
+                + "rating_1 INT NOT NULL, rating_2 INT NOT NULL, rating_3 INT NOT NULL, rating_4 INT NOT NULL, "
+                + "rating_5 INT NOT NULL, approved BOOLEAN NOT NULL, created_at VARCHAR, age BIGINT NOT NULL, "
+                + "version BIGINT NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS recipes_seq ON recipes (seq)",
+        "CREATE INDEX IF NOT EXISTS recipes_category ON recipes (category_key)",
+        "CREATE INDEX IF NOT EXISTS recipes_cuisine ON recipes (cuisine_key)",
+        "CREATE INDEX IF NOT EXISTS recipes_difficulty ON recipes (difficulty_key)",
+        "CREATE INDEX IF NOT EXISTS recipes_author ON recipes (author_key)",
+        "CREATE INDEX IF NOT EXISTS recipes_approved ON recipes (approved, seq)",
+        "CREATE INDEX IF NOT EXISTS recipes_total_time ON recipes (total_time, id)",
+        "CREATE INDEX IF NOT EXISTS recipes_age ON recipes (age DESC, id)",
+        "CREATE TABLE IF NOT EXISTS recipe_ingredients (recipe_id VARCHAR(255) NOT NULL, position INT NOT NULL, "
+                + "name VARCHAR, quantity DOUBLE PRECISION NOT NULL, unit VARCHAR, notes VARCHAR, "
+                + "PRIMARY KEY (recipe_id, position))",
+        "CREATE TABLE IF NOT EXISTS recipe_steps (recipe_id VARCHAR(255) NOT NULL, position INT NOT NULL, "
+                + "step VARCHAR, PRIMARY KEY (recipe_id, position))",
+        "CREATE TABLE IF NOT EXISTS recipe_tags (recipe_id VARCHAR(255) NOT NULL, position INT NOT NULL, "
+                + "tag VARCHAR, PRIMARY KEY (recipe_id, position))",
+        // Tokens of the searchable text with their weighted frequency, as in TextIndex
+        "CREATE TABLE IF NOT EXISTS recipe_terms (term VARCHAR(255) NOT NULL, recipe_id VARCHAR(255) NOT NULL, "
+                + "weight INT NOT NULL, PRIMARY KEY (term, recipe_id))",
+        "CREATE INDEX IF NOT EXISTS recipe_terms_recipe ON recipe_terms (recipe_id)",
+        // Stemmed terms of each distinct ingredient, keyed as in IngredientIndex
+        "CREATE TABLE IF NOT EXISTS recipe_ingredient_terms (term VARCHAR(255) NOT NULL, "
+                + "recipe_id VARCHAR(255) NOT NULL, ingredient VARCHAR NOT NULL, PRIMARY KEY (term, recipe_id, ingredient))",
+        "CREATE INDEX IF NOT EXISTS recipe_ingredient_terms_recipe ON recipe_ingredient_terms (recipe_id)",
+        "CREATE TABLE IF NOT EXISTS recipe_store_meta (name VARCHAR(255) PRIMARY KEY, val VARCHAR)"
+    };
+    private static final String[] CHILD_TABLES =
+            {"recipe_ingredients", "recipe_steps", "recipe_tags", "recipe_terms", "recipe_ingredient_terms"};
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final ConcurrentLinkedQueue<Session> idle = new ConcurrentLinkedQueue<>();
+    private final StripedLocks editLocks = new StripedLocks(Integer.getInteger("recipe.editLockStripes", 64));
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final RatingAggregator ratings;
+    private volatile boolean closed;
+
+    // The journaled catalog in seedDir, if any, is imported when the database is new
+    public SqlRecipeStore(String url, String user, String password, File seedDir, long ratingFlushIntervalMillis)
+            throws Exception {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        withConnection(session -> {
+            try (Statement statement = session.connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            }
+            return null;
+        });
+        seedFromJournaledCatalog(seedDir);
+        indexIngredients();
+        nextSeq.set(withConnection(session -> {
+            try (ResultSet rs = session.prepare("SELECT COALESCE(MAX(seq), 0) + 1 FROM recipes").executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }));
+        ratings = new RatingAggregator(this::flushRatings, ratingFlushIntervalMillis);
+        ratings.start();
+    }
+
+    /**
+     * One-time import of recipes.xml / recipes.bin plus journal, moving embedded reviews
+     * out. The files are read directly, so the journaled store is never started.
+     */
+    private void seedFromJournaledCatalog(File dataDir) throws Exception {
+        withConnection(session -> {
+            try (ResultSet rs = session.prepare("SELECT val FROM recipe_store_meta WHERE name = 'seeded'")
+                    .executeQuery()) {
+                if (rs.next()) {
+                    return null;
+                }
+            }
+            Map<String, Recipe> recipes = new LinkedHashMap<>();
+            if (RecipeCatalogReader.exists(dataDir)) {
+                RecipeCatalogReader.read(dataDir, false, recipes);
+            }
+            long seq = 1;
+            for (Recipe recipe : recipes.values()) {
+                IdGenerator.observe(recipe.getId());
+                if (!recipe.getReviews().isEmpty()) {
+                    ReviewManager.importEmbeddedReviews(recipe);
+                    recipe.getReviews().clear();
+                }
+                insertRecipe(session, recipe, seq++, recipe.getVersion());
+                writeChildren(session, recipe);
+            }
+            PreparedStatement mark = session.prepare("INSERT INTO recipe_store_meta (name, val) VALUES ('seeded', ?)");
+            mark.setString(1, String.valueOf(recipes.size()));
+            mark.executeUpdate();
+            System.out.println("Seeded SQL recipe store with " + recipes.size() + " recipes");
+            return null;
+        });
+    }
+
+    // Databases created before ingredient matching get their ingredient terms once
+    private void indexIngredients() throws Exception {
+        withConnection(session -> {
+            try (ResultSet rs = session.prepare("SELECT val FROM recipe_store_meta WHERE name = 'ingredient_terms'")
+                    .executeQuery()) {
+                if (rs.next()) {
+                    return null;
+                }
+            }
+            session.prepare("DELETE FROM recipe_ingredient_terms").executeUpdate();
+            Map<String, Recipe> recipes = new LinkedHashMap<>();
+            try (ResultSet rs = session.prepare("SELECT recipe_id, name FROM recipe_ingredients").executeQuery()) {
+                while (rs.next()) {
+                    Recipe recipe = recipes.computeIfAbsent(rs.getString(1), id -> {
+                        Recipe stub = new Recipe();
+                        stub.setId(id);
+                        return stub;
+                    });
+                    recipe.getIngredients().add(new Ingredient(rs.getString(2), 0, null));
+                }
+            }
+            for (Recipe recipe : recipes.values()) {
+                writeIngredientTerms(session, recipe);
+            }
+            PreparedStatement mark = session.prepare(
+                    "INSERT INTO recipe_store_meta (name, val) VALUES ('ingredient_terms', ?)");
+            mark.setString(1, String.valueOf(recipes.size()));
+            mark.executeUpdate();
+            return null;
+        });
+    }
+
+    @Override
+    public List<Recipe> findAll() {
+        return read(session -> load(session, new SqlQueryTranslator(RecipeQuery.everything()), true));
+    }
+
+    @Override
+    public Recipe findById(String id) {
+        if (id == null) {
+            return null;
+        }
+        return read(session -> first(loadByIds(session, params(id), true)));
+    }
+
+    @Override
+    public List<RecipeSummary> findAllSummaries() {
+        return summaries(read(session -> load(session, new SqlQueryTranslator(RecipeQuery.everything()), false)));
+    }
+
+    @Override
+    public RecipeSummary findSummary(String id) {
+        if (id == null) {
+            return null;
+        }
+        Recipe recipe = read(session -> first(loadByIds(session, params(id), false)));
+        return recipe != null ? new RecipeSummary(recipe) : null;
+    }
+
+    @Override
+    public void save(Recipe recipe) throws Exception {
+        if (recipe == null || recipe.getId() == null || recipe.getId().isEmpty()) {
+            throw new IllegalArgumentException("Recipe ID cannot be null or empty");
+        }
+        long expected = recipe.getVersion();
+        boolean written = withConnection(session -> {
+            // Both steps are conditional in the database: the update on the version, the
+            // insert on the primary key, which fails the second of two concurrent creations
+            if (updateContent(session, recipe, expected) != 1
+                    && (expected != 0 || !insertNew(session, recipe))) {
+                return false;
+            }
+            writeChildren(session, recipe);
+            return true;
+        });
+        if (!written) {
+            throw new RecipeConflictException(recipe.getId(), expected,
+                    withConnection(session -> currentVersion(session, recipe.getId())));
+        }
+        recipe.setVersion(expected + 1);
+    }
+
+    @Override
+    public Recipe modify(String id, RecipeEditor editor) throws Exception {
+        ReentrantLock lock = editLocks.lockFor(id);
+        lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                Recipe recipe = findById(id);
+                if (recipe == null) {
+                    return null;
+                }
+                editor.edit(recipe);
+                recipe.setId(id);
+                try {
+                    save(recipe);
+                    return recipe;
+                } catch (RecipeConflictException e) {
+                    if (attempt >= MAX_EDIT_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Changes to the rating tallies are ignored here; votes go through recordRating
+    @Override
+    public void update(String id, Consumer<Recipe> change) throws Exception {
+        modify(id, change::accept);
+    }
+
+    @Override
+    public void delete(String id) throws Exception {
+        withConnection(session -> {
+            deleteChildren(session, id);
+            PreparedStatement delete = session.prepare("DELETE FROM recipes WHERE id = ?");
+            delete.setString(1, id);
+            delete.executeUpdate();
+            return null;
+        });
+    }
+
+    @Override
+    public void recordRating(String recipeId, int stars) {
+        if (recipeId != null) {
+            ratings.record(recipeId, stars);
+        }
+    }
+
+    @Override
+    public int[] getPendingRatings(String recipeId) {
+        return ratings.pendingVotes(recipeId);
+    }
+
+    // Increments the counters in place, one batched statement for all rated recipes
+    private void flushRatings(Map<String, int[]> votesPerStar) throws Exception {
+        withConnection(session -> {
+            PreparedStatement update = session.prepare("UPDATE recipes SET "
+                    + "rating_1 = rating_1 + ?, rating_2 = rating_2 + ?, rating_3 = rating_3 + ?, "
+                    + "rating_4 = rating_4 + ?, rating_5 = rating_5 + ?, "
+                    + "total_ratings = total_ratings + ?, rating_sum = rating_sum + ? WHERE id = ?");
+            for (Map.Entry<String, int[]> entry : votesPerStar.entrySet()) {
+                int[] votes = entry.getValue();
+                int count = 0;
+                long sum = 0;
+                for (int i = 0; i < votes.length; i++) {
+                    update.setInt(i + 1, votes[i]);
+                    count += votes[i];
+                    sum += (long) votes[i] * (i + 1);
+                }
+                update.setInt(6, count);
+                update.setLong(7, sum);
+                update.setString(8, entry.getKey());
+                update.addBatch();
+            }
+            update.executeBatch();
+            return null;
+        });
+    }
+
+    // Every predicate, and the relevance order for text, is evaluated by the database
+    @Override
+    public List<Recipe> query(RecipeQuery query) {
+        return read(session -> load(session, new SqlQueryTranslator(query), true));
+    }
+
+    /**
+     * Only the page is read: the database filters, orders, continues after the cursor
+     * and applies LIMIT/OFFSET, with one row more than the page to tell whether another
+     * follows. With a cursor the offset is not skipped again.
+     */
+    @Override
+    public RecipePage page(RecipeQuery query, RecipeSort sort, String cursor, int offset, int limit) {
+        int pageOffset = Math.max(0, offset);
+        int pageLimit = Math.max(1, limit);
+        Recipe after = sort.decodeCursor(cursor);
+        int skip = after != null ? 0 : pageOffset;
+        SqlQueryTranslator.SqlQuery select = new SqlQueryTranslator(query)
+                .select(RECIPE_COLUMNS, sort, after, skip, pageLimit + 1);
+
+        List<Recipe> rows = read(session -> {
+            List<Recipe> recipes = new ArrayList<>(readRows(session, select).values());
+            loadChildren(session, recipes, false);
+            return recipes;
+        });
+        boolean hasNext = rows.size() > pageLimit;
+        List<Recipe> onPage = hasNext ? rows.subList(0, pageLimit) : rows;
+        String nextCursor = hasNext && sort.supportsCursor() ? sort.cursorFor(onPage.get(pageLimit - 1)) : null;
+        return new RecipePage(summaries(onPage), sort, pageOffset, pageLimit, hasNext, nextCursor);
+    }
+
+    @Override
+    public List<Recipe> cookWith(RecipeQuery query, Collection<String> ingredients) {
+        SqlQueryTranslator.SqlQuery select = new SqlQueryTranslator(query).cookWith(RECIPE_COLUMNS, ingredients);
+        if (select == null) {
+            return new ArrayList<>();
+        }
+        return read(session -> {
+            List<Recipe> recipes = new ArrayList<>(readRows(session, select).values());
+            loadChildren(session, recipes, true);
+            return recipes;
+        });
+    }
+
+    @Override
+    public CatalogStats statistics() {
+        long recentSince = CatalogStats.recentSince();
+        return read(session -> {
+            PreparedStatement totals = session.prepare("SELECT COUNT(*), "
+                    + "COALESCE(SUM(CASE WHEN approved THEN 1 ELSE 0 END), 0), "
+                    + "COALESCE(SUM(CASE WHEN age >= ? THEN 1 ELSE 0 END), 0), "
+                    + "COALESCE(SUM(total_ratings), 0), COALESCE(SUM(rating_sum), 0) FROM recipes");
+            totals.setLong(1, recentSince);
+            int count;
+            int approved;
+            int recent;
+            long votes;
+            long sum;
+            try (ResultSet rs = totals.executeQuery()) {
+                rs.next();
+                count = rs.getInt(1);
+                approved = rs.getInt(2);
+                recent = rs.getInt(3);
+                votes = rs.getLong(4);
+                sum = rs.getLong(5);
+            }
+            int[] histogram = new int[CatalogStats.TIME_BUCKETS];
+            PreparedStatement times = session.prepare("SELECT LEAST(GREATEST(total_time, 0) / "
+                    + CatalogStats.TIME_BUCKET_MINUTES + ", " + (CatalogStats.TIME_BUCKETS - 1)
+                    + ") AS bucket, COUNT(*) FROM recipes GROUP BY bucket");
+            try (ResultSet rs = times.executeQuery()) {
+                while (rs.next()) {
+                    histogram[rs.getInt(1)] = rs.getInt(2);
+                }
+            }
+            List<CatalogStats.FacetCount> cuisines = new ArrayList<>();
+            PreparedStatement byCuisine = session.prepare("SELECT cuisine_key, COUNT(*), "
+                    + "SUM(total_ratings), SUM(rating_sum) FROM recipes GROUP BY cuisine_key");
+            try (ResultSet rs = byCuisine.executeQuery()) {
+                while (rs.next()) {
+                    long cuisineVotes = rs.getLong(3);
+                    double average = cuisineVotes > 0 ? (double) rs.getLong(4) / cuisineVotes : 0;
+                    cuisines.add(new CatalogStats.FacetCount(rs.getString(1), rs.getInt(2), average));
+                }
+            }
+            return new CatalogStats(count, approved, recent, votes, sum, histogram, cuisines);
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        ratings.stop();
+        closed = true;
+        Session session;
+        while ((session = idle.poll()) != null) {
+            session.close();
+        }
+    }
+
+    // All matching recipes in the translator's order, with child rows fetched by subquery
+    private static List<Recipe> load(Session session, SqlQueryTranslator translator, boolean full)
+            throws SQLException {
+        Map<String, Recipe> recipes = readRows(session,
+                translator.select(RECIPE_COLUMNS, RecipeSort.RELEVANCE, null, 0, -1));
+        if (!recipes.isEmpty()) {
+            SqlQueryTranslator.SqlQuery ids = translator.ids();
+            String scope = " WHERE recipe_id IN (" + ids.getSql() + ")";
+            readTags(session, recipes, scope, ids.getParams());
+            if (full) {
+                readIngredients(session, recipes, scope, ids.getParams());
+                readSteps(session, recipes, scope, ids.getParams());
+            }
+        }
+        return new ArrayList<>(recipes.values());
+    }
+
+    private static List<Recipe> loadByIds(Session session, List<Object> ids, boolean full) throws SQLException {
+        List<Recipe> recipes = new ArrayList<>(readRows(session,
+                new SqlQueryTranslator.SqlQuery("SELECT " + RECIPE_COLUMNS + " FROM recipes WHERE id = ?", ids))
+                .values());
+        loadChildren(session, recipes, full);
+        return recipes;
+    }
+
+    /**
+     * Child rows of the given recipes, looked up by id. The id list is padded to a power
+     * of two by repeating its last id, so only a handful of distinct statements exist.
+     * Summaries ({@code full} false) need only the tags.
+     */
+    private static void loadChildren(Session session, List<Recipe> recipes, boolean full) throws SQLException {
+        for (int from = 0; from < recipes.size(); from += MAX_IDS_PER_LOOKUP) {
+            Map<String, Recipe> chunk = new HashMap<>();
+            List<Object> ids = new ArrayList<>();
+            for (Recipe recipe : recipes.subList(from, Math.min(recipes.size(), from + MAX_IDS_PER_LOOKUP))) {
+                chunk.put(recipe.getId(), recipe);
+                ids.add(recipe.getId());
+            }
+            int width = Integer.highestOneBit(ids.size());
+            width = width < ids.size() ? width << 1 : width;
+            while (ids.size() < width) {
+                ids.add(ids.get(ids.size() - 1));
+            }
+            StringBuilder scope = new StringBuilder(" WHERE recipe_id IN (?");
+            for (int i = 1; i < width; i++) {
+                scope.append(", ?");
+            }
+            scope.append(")");
+            readTags(session, chunk, scope.toString(), ids);
+            if (full) {
+                readIngredients(session, chunk, scope.toString(), ids);
+                readSteps(session, chunk, scope.toString(), ids);
+            }
+        }
+    }
+
+    private static Map<String, Recipe> readRows(Session session, SqlQueryTranslator.SqlQuery select)
+            throws SQLException {
+        Map<String, Recipe> recipes = new LinkedHashMap<>();
+        try (ResultSet rs = session.prepare(select).executeQuery()) {
+            while (rs.next()) {
+                Recipe recipe = readRecipe(rs);
+                recipes.put(recipe.getId(), recipe);
+            }
+        }
+        return recipes;
+    }
+
+    private static void readTags(Session session, Map<String, Recipe> recipes, String scope, List<Object> params)
+            throws SQLException {
+        try (ResultSet rs = session.prepare(new SqlQueryTranslator.SqlQuery(
+                "SELECT recipe_id, tag FROM recipe_tags" + scope + " ORDER BY recipe_id, position", params))
+                .executeQuery()) {
+            while (rs.next()) {
+                Recipe recipe = recipes.get(rs.getString(1));
+                if (recipe != null) {
+                    recipe.getTags().add(AttributeDictionary.TAGS.intern(rs.getString(2)));
+                }
+            }
+        }
+    }
+
+    private static void readIngredients(Session session, Map<String, Recipe> recipes, String scope,
+            List<Object> params) throws SQLException {
+        try (ResultSet rs = session.prepare(new SqlQueryTranslator.SqlQuery(
+                "SELECT recipe_id, name, quantity, unit, notes FROM recipe_ingredients" + scope
+                        + " ORDER BY recipe_id, position", params)).executeQuery()) {
+            while (rs.next()) {
+                Recipe recipe = recipes.get(rs.getString(1));
+                if (recipe != null) {
+                    recipe.getIngredients().add(new Ingredient(rs.getString(2), rs.getDouble(3),
+                            AttributeDictionary.UNITS.intern(rs.getString(4)), rs.getString(5)));
+                }
+            }
+        }
+    }
+
+    private static void readSteps(Session session, Map<String, Recipe> recipes, String scope, List<Object> params)
+            throws SQLException {
+        try (ResultSet rs = session.prepare(new SqlQueryTranslator.SqlQuery(
+                "SELECT recipe_id, step FROM recipe_steps" + scope + " ORDER BY recipe_id, position", params))
+                .executeQuery()) {
+            while (rs.next()) {
+                Recipe recipe = recipes.get(rs.getString(1));
+                if (recipe != null) {
+                    recipe.getPreparationSteps().add(rs.getString(2));
+                }
+            }
+        }
+    }
+
+    private static Recipe readRecipe(ResultSet rs) throws SQLException {
+        Recipe recipe = new Recipe();
+        recipe.setId(rs.getString("id"));
+        recipe.setTitle(rs.getString("title"));
+        recipe.setDescription(rs.getString("description"));
+        recipe.setCuisineType(AttributeDictionary.CUISINES.intern(rs.getString("cuisine_type")));
+        recipe.setDifficultyLevel(AttributeDictionary.DIFFICULTIES.intern(rs.getString("difficulty_level")));
+        recipe.setCategory(AttributeDictionary.CATEGORIES.intern(rs.getString("category")));
+        recipe.setPhotoPath(rs.getString("photo_path"));
+        recipe.setUserId(rs.getString("user_id"));
+        recipe.setAuthorName(rs.getString("author_name"));
+        recipe.setPreparationTime(rs.getInt("preparation_time"));
+        recipe.setCookingTime(rs.getInt("cooking_time"));
+        recipe.setServings(rs.getInt("servings"));
+        recipe.setTotalRatings(rs.getInt("total_ratings"));
+        recipe.setRatingSum(rs.getLong("rating_sum"));
+        int[] histogram = new int[5];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = rs.getInt("rating_" + (i + 1));
+        }
+        recipe.setRatingHistogram(histogram);
+        recipe.setApproved(rs.getBoolean("approved"));
+        recipe.setCreatedAt(rs.getString("created_at"));
+        recipe.setVersion(rs.getLong("version"));
+        return recipe;
+    }
+
+    private static void insertRecipe(Session session, Recipe recipe, long seq, long version) throws SQLException {
+        PreparedStatement insert = session.prepare("INSERT INTO recipes (" + RECIPE_COLUMNS + ") VALUES "
+                + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        int i = 1;
+        insert.setString(i++, recipe.getId());
+        insert.setLong(i++, seq);
+        i = bindContent(insert, recipe, i);
+        insert.setInt(i++, recipe.getTotalRatings());
+        insert.setLong(i++, recipe.getRatingSum());
+        for (int votes : recipe.getRatingHistogram()) {
+            insert.setInt(i++, votes);
+        }
+        insert.setBoolean(i++, recipe.isApproved());
+        insert.setString(i++, recipe.getCreatedAt());
+        insert.setLong(i++, RecipeSort.age(recipe));
+        insert.setLong(i, version);
+        insert.executeUpdate();
+    }
+
+    // False if a recipe with the id already exists
+    private boolean insertNew(Session session, Recipe recipe) throws SQLException {
+        try {
+            insertRecipe(session, recipe, nextSeq.getAndIncrement(), 1);
+            return true;
+        } catch (SQLException e) {
+            if (e instanceof SQLIntegrityConstraintViolationException || "23505".equals(e.getSQLState())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    // Everything but the rating counters, conditional on the version; returns the row count
+    private static int updateContent(Session session, Recipe recipe, long expectedVersion) throws SQLException {
+        PreparedStatement update = session.prepare("UPDATE recipes SET title = ?, "
+                + "description = ?, cuisine_type = ?, cuisine_key = ?, difficulty_level = ?, difficulty_key = ?, "
+                + "category = ?, category_key = ?, photo_path = ?, user_id = ?, author_key = ?, author_name = ?, "
+                + "preparation_time = ?, cooking_time = ?, total_time = ?, servings = ?, approved = ?, "
+                + "created_at = ?, age = ?, version = ? WHERE id = ? AND version = ?");
+        int i = bindContent(update, recipe, 1);
+        update.setBoolean(i++, recipe.isApproved());
+        update.setString(i++, recipe.getCreatedAt());
+        update.setLong(i++, RecipeSort.age(recipe));
+        update.setLong(i++, expectedVersion + 1);
+        update.setString(i++, recipe.getId());
+        update.setLong(i, expectedVersion);
+        return update.executeUpdate();
+    }
+
+    // title .. servings, in RECIPE_COLUMNS order; returns the next parameter index
+    private static int bindContent(PreparedStatement statement, Recipe recipe, int i) throws SQLException {
+        statement.setString(i++, recipe.getTitle());
+        statement.setString(i++, recipe.getDescription());
+        statement.setString(i++, recipe.getCuisineType());
+        statement.setString(i++, FacetIndex.normalize(recipe.getCuisineType()));
+        statement.setString(i++, recipe.getDifficultyLevel());
+        statement.setString(i++, FacetIndex.normalize(recipe.getDifficultyLevel()));
+        statement.setString(i++, recipe.getCategory());
+        statement.setString(i++, FacetIndex.normalize(recipe.getCategory()));
+        statement.setString(i++, recipe.getPhotoPath());
+        statement.setString(i++, recipe.getUserId());
+        statement.setString(i++, FacetIndex.normalize(recipe.getUserId()));
+        statement.setString(i++, recipe.getAuthorName());
+        statement.setInt(i++, recipe.getPreparationTime());
+        statement.setInt(i++, recipe.getCookingTime());
+        statement.setInt(i++, recipe.getTotalTime());
+        statement.setInt(i++, recipe.getServings());
+        return i;
+    }
+
+    private static void writeChildren(Session session, Recipe recipe) throws SQLException {
+        deleteChildren(session, recipe.getId());
+        PreparedStatement insert = session.prepare("INSERT INTO recipe_ingredients "
+                + "(recipe_id, position, name, quantity, unit, notes) VALUES (?, ?, ?, ?, ?, ?)");
+        int position = 0;
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            insert.setString(1, recipe.getId());
+            insert.setInt(2, position++);
+            insert.setString(3, ingredient.getName());
+            insert.setDouble(4, ingredient.getQuantity());
+            insert.setString(5, ingredient.getUnit());
+            insert.setString(6, ingredient.getNotes());
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        insertList(session, "INSERT INTO recipe_steps (recipe_id, position, step) VALUES (?, ?, ?)",
+                recipe.getId(), recipe.getPreparationSteps());
+        insertList(session, "INSERT INTO recipe_tags (recipe_id, position, tag) VALUES (?, ?, ?)",
+                recipe.getId(), recipe.getTags());
+        PreparedStatement terms = session.prepare("INSERT INTO recipe_terms (term, recipe_id, weight) VALUES (?, ?, ?)");
+        for (Map.Entry<String, Integer> term : TextIndex.termFrequencies(recipe).entrySet()) {
+            terms.setString(1, term.getKey());
+            terms.setString(2, recipe.getId());
+            terms.setInt(3, term.getValue());
+            terms.addBatch();
+        }
+        terms.executeBatch();
+        writeIngredientTerms(session, recipe);
+    }
+
+    private static void writeIngredientTerms(Session session, Recipe recipe) throws SQLException {
+        PreparedStatement insert = session.prepare(
+                "INSERT INTO recipe_ingredient_terms (term, recipe_id, ingredient) VALUES (?, ?, ?)");
+        for (Map.Entry<String, List<String>> ingredient : IngredientIndex.keys(recipe).entrySet()) {
+            for (String term : ingredient.getValue()) {
+                insert.setString(1, term);
+                insert.setString(2, recipe.getId());
+                insert.setString(3, ingredient.getKey());
+                insert.addBatch();
+            }
+        }
+        insert.executeBatch();
+    }
+
+    private static void insertList(Session session, String sql, String recipeId, List<String> values)
+            throws SQLException {
+        PreparedStatement insert = session.prepare(sql);
+        int position = 0;
+        for (String value : values) {
+            insert.setString(1, recipeId);
+            insert.setInt(2, position++);
+            insert.setString(3, value);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+    }
+
+    private static void deleteChildren(Session session, String recipeId) throws SQLException {
+        for (String table : CHILD_TABLES) {
+            PreparedStatement delete = session.prepare("DELETE FROM " + table + " WHERE recipe_id = ?");
+            delete.setString(1, recipeId);
+            delete.executeUpdate();
+        }
+    }
+
+    // -1 if the recipe does not exist
+    private static long currentVersion(Session session, String id) throws SQLException {
+        PreparedStatement select = session.prepare("SELECT version FROM recipes WHERE id = ?");
+        select.setString(1, id);
+        try (ResultSet rs = select.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    private static void bind(PreparedStatement statement, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            statement.setObject(i + 1, params.get(i));
+        }
+    }
+
+    private static List<Object> params(Object... values) {
+        List<Object> params = new ArrayList<>(values.length);
+        for (Object value : values) {
+            params.add(value);
+        }
+        return params;
+    }
+
+    private static List<RecipeSummary> summaries(List<Recipe> recipes) {
+        List<RecipeSummary> summaries = new ArrayList<>(recipes.size());
+        for (Recipe recipe : recipes) {
+            summaries.add(new RecipeSummary(recipe));
+        }
+        return summaries;
+    }
+
+    private static Recipe first(List<Recipe> recipes) {
+        return recipes.isEmpty() ? null : recipes.get(0);
+    }
+
+    // Runs the work in one transaction on a pooled connection
+    private <T> T withConnection(SqlWork<T> work) throws Exception {
+        Session session = idle.poll();
+        if (session == null) {
+            Connection connection = DriverManager.getConnection(url, user, password);
+            connection.setAutoCommit(false);
+            session = new Session(connection);
+        }
+        boolean healthy = false;
+        try {
+            T result = work.run(session);
+            session.connection.commit();
+            healthy = true;
+            return result;
+        } catch (Exception e) {
+            session.discardStatements();
+            try {
+                session.connection.rollback();
+                healthy = true;
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            if (healthy && !closed) {
+                idle.offer(session);
+            } else {
+                session.close();
+            }
+        }
+    }
+
+    // A failed read is thrown on, so a broken connection or bad SQL never looks like an empty catalog
+    private <T> T read(SqlWork<T> work) {
+        try {
+            return withConnection(work);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read from the SQL recipe store", e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            // already broken
+        }
+    }
+}
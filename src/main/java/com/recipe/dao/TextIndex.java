@@ -0,0 +1,166 @@
+package com.recipe.dao;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inverted index over the tokenized title, description, tags, category and ingredient
+ * names of every recipe. Each query token matches as a prefix, the per-token posting
+ * lists are intersected (all tokens must match) and hits are ranked with BM25.
+ */
+public class TextIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Term frequency weights per field: a title hit counts more than a description hit
+    private static final int TITLE_WEIGHT = 3;
+    private static final int TAG_WEIGHT = 2;
+    private static final int BODY_WEIGHT = 1;
+
+    // term -> (doc id -> weighted term frequency)
+    private final ConcurrentSkipListMap<String, Map<Integer, Integer>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Integer> docLengths = new ConcurrentHashMap<>();
+    private final AtomicLong totalLength = new AtomicLong();
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        // Fold case and strip accents so "Crème" matches "creme"
+        String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    static Map<String, Integer> termFrequencies(Recipe recipe) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        addTokens(frequencies, recipe.getTitle(), TITLE_WEIGHT);
+        addTokens(frequencies, recipe.getDescription(), BODY_WEIGHT);
+        addTokens(frequencies, recipe.getCategory(), TAG_WEIGHT);
+        for (String tag : recipe.getTags()) {
+            addTokens(frequencies, tag, TAG_WEIGHT);
+        }
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            addTokens(frequencies, ingredient.getName(), BODY_WEIGHT);
+        }
+        return frequencies;
+    }
+
+    private static void addTokens(Map<String, Integer> frequencies, String text, int weight) {
+        for (String token : tokenize(text)) {
+            frequencies.merge(token, weight, Integer::sum);
+        }
+    }
+
+    public void add(int docId, Recipe recipe) {
+        Map<String, Integer> frequencies = termFrequencies(recipe);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new ConcurrentHashMap<>())
+                    .put(docId, entry.getValue());
+            length += entry.getValue();
+        }
+        docLengths.put(docId, length);
+        totalLength.addAndGet(length);
+    }
+
+    public void remove(int docId, Recipe recipe) {
+        for (String term : termFrequencies(recipe).keySet()) {
+            postings.computeIfPresent(term, (key, docs) -> {
+                docs.remove(docId);
+                return docs.isEmpty() ? null : docs;
+            });
+        }
+        Integer length = docLengths.remove(docId);
+        if (length != null) {
+            totalLength.addAndGet(-length);
+        }
+    }
+
+    public void update(int docId, Recipe previous, Recipe current) {
+        remove(docId, previous);
+        add(docId, current);
+    }
+
+    /**
+     * Returns the BM25 score of every document that matches all query tokens. An empty
+     * map means nothing matched (or the query had no searchable tokens).
+     */
+    public Map<Integer, Double> search(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        int docCount = Math.max(1, docLengths.size());
+        double averageLength = Math.max(1.0, (double) totalLength.get() / docCount);
+
+        // Score each token separately over all of its prefix expansions
+        List<Map<Integer, Double>> perToken = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Map<Integer, Double> scores = new HashMap<>();
+            NavigableMap<String, Map<Integer, Integer>> expansions =
+                    postings.subMap(token, true, token + Character.MAX_VALUE, false);
+            // Every expansion counts, as in the SQL store's LIKE match, so short prefixes find all recipes
+            for (Map.Entry<String, Map<Integer, Integer>> entry : expansions.entrySet()) {
+                Map<Integer, Integer> docs = entry.getValue();
+                double idf = Math.log(1 + (docCount - docs.size() + 0.5) / (docs.size() + 0.5));
+                for (Map.Entry<Integer, Integer> posting : docs.entrySet()) {
+                    Integer length = docLengths.get(posting.getKey());
+                    double tf = posting.getValue();
+                    double norm = K1 * (1 - B + B * (length != null ? length : 0) / averageLength);
+                    double score = idf * tf * (K1 + 1) / (tf + norm);
+                    scores.merge(posting.getKey(), score, Math::max);
+                }
+            }
+            if (scores.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            perToken.add(scores);
+        }
+
+        // Intersect starting from the shortest posting list
+        perToken.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        Map<Integer, Double> result = new HashMap<>();
+        Map<Integer, Double> smallest = perToken.get(0);
+        candidates:
+        for (Map.Entry<Integer, Double> candidate : smallest.entrySet()) {
+            double total = candidate.getValue();
+            for (int i = 1; i < perToken.size(); i++) {
+                Double score = perToken.get(i).get(candidate.getKey());
+                if (score == null) {
+                    continue candidates;
+                }
+                total += score;
+            }
+            result.put(candidate.getKey(), total);
+        }
+        return result;
+    }
+}
@@ -26,6 +26,10 @@ public class Ingredient implements Serializable {
         this.notes = notes;
     }
 
+    public Ingredient(Ingredient other) {
+        this(other.name, other.quantity, other.unit, other.notes);
+    }
+
     // Getters and Setters
     public String getName() {
         return name;
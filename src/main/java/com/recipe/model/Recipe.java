@@ -22,20 +22,78 @@ public class Recipe implements Serializable {
     private String photoPath;
     private String userId;
     private String authorName;
-    private double averageRating;
     private int totalRatings;
+    // Sum of all star ratings and the number of votes per star (1..5); the average is derived
+    private long ratingSum;
+    private int[] ratingHistogram;
     private boolean approved;
     private String createdAt;
     private List<Review> reviews;
+    // Number of committed edits; a save must name the version it was based on
+    private long version;
 
     public Recipe() {
         this.ingredients = new ArrayList<>();
         this.preparationSteps = new ArrayList<>();
         this.tags = new ArrayList<>();
         this.reviews = new ArrayList<>();
+        this.ratingHistogram = new int[5];
         this.approved = false;
     }
 
+    public Recipe(Recipe other) {
+        this(other, true);
+    }
+
+    // Copies the scalar fields and takes the given collections as they are
+    protected Recipe(Recipe other, List<Ingredient> ingredients, List<String> preparationSteps,
+            List<String> tags, List<Review> reviews) {
+        this(other, false);
+        this.ingredients = ingredients;
+        this.preparationSteps = preparationSteps;
+        this.tags = tags;
+        this.reviews = reviews;
+    }
+
+    // Copies the scalar fields, and deep copies of the collections if asked to
+    protected Recipe(Recipe other, boolean copyCollections) {
+        this();
+        this.id = other.id;
+        this.title = other.title;
+        this.description = other.description;
+        this.cuisineType = other.cuisineType;
+        this.difficultyLevel = other.difficultyLevel;
+        this.preparationTime = other.preparationTime;
+        this.cookingTime = other.cookingTime;
+        this.servings = other.servings;
+        this.category = other.category;
+        this.photoPath = other.photoPath;
+        this.userId = other.userId;
+        this.authorName = other.authorName;
+        this.totalRatings = other.totalRatings;
+        this.ratingSum = other.ratingSum;
+        this.ratingHistogram = other.ratingHistogram.clone();
+        this.approved = other.approved;
+        this.createdAt = other.createdAt;
+        this.version = other.version;
+        if (copyCollections) {
+            // Through the getters, which a subclass may fill on demand
+            for (Ingredient ingredient : other.getIngredients()) {
+                this.ingredients.add(new Ingredient(ingredient));
+            }
+            this.preparationSteps.addAll(other.getPreparationSteps());
+            this.tags.addAll(other.getTags());
+            for (Review review : other.getReviews()) {
+                this.reviews.add(new Review(review));
+            }
+        }
+    }
+
+    // A private deep copy; subclasses may keep it cheaper than the copy constructor
+    public Recipe copy() {
+        return new Recipe(this);
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -158,11 +216,53 @@ public class Recipe implements Serializable {
     }
 
     public double getAverageRating() {
-        return averageRating;
+        return totalRatings > 0 ? (double) ratingSum / totalRatings : 0.0;
     }
 
+    /**
+     * Older records only kept the average, so set totalRatings first. The sum is derived
+     * from it, and the votes are spread over the two stars around the average so that the
+     * histogram adds up to the same count and sum; later votes then stay consistent.
+     */
     public void setAverageRating(double averageRating) {
-        this.averageRating = averageRating;
+        int stars = ratingHistogram.length;
+        long sum = Math.round(averageRating * totalRatings);
+        this.ratingSum = Math.max(totalRatings, Math.min((long) stars * totalRatings, sum));
+        this.ratingHistogram = new int[stars];
+        if (totalRatings > 0) {
+            // Every vote at the lower star, then enough of them one star up to reach the sum
+            int lower = (int) Math.min(stars, ratingSum / totalRatings);
+            int raised = (int) (ratingSum - (long) lower * totalRatings);
+            ratingHistogram[lower - 1] += totalRatings - raised;
+            if (raised > 0) {
+                ratingHistogram[lower] += raised;
+            }
+        }
+    }
+
+    public long getRatingSum() {
+        return ratingSum;
+    }
+
+    public void setRatingSum(long ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    public int[] getRatingHistogram() {
+        return ratingHistogram;
+    }
+
+    public void setRatingHistogram(int[] ratingHistogram) {
+        this.ratingHistogram = ratingHistogram;
+    }
+
+    // Folds in votes given as a count per star (index 0 = 1 star)
+    public void addRatings(int[] votesPerStar) {
+        for (int i = 0; i < votesPerStar.length && i < ratingHistogram.length; i++) {
+            ratingHistogram[i] += votesPerStar[i];
+            totalRatings += votesPerStar[i];
+            ratingSum += (long) (i + 1) * votesPerStar[i];
+        }
     }
 
     public int getTotalRatings() {
@@ -197,6 +297,14 @@ public class Recipe implements Serializable {
         this.reviews = reviews;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public int getTotalTime() {
         return preparationTime + cookingTime;
     }
@@ -0,0 +1,119 @@
+package com.recipe.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, list-page view of a {@link Recipe}: the fields a recipe card or table row
+ * shows, without ingredients, steps or reviews. One is kept per recipe next to the full
+ * record and shared by every listing request.
+ */
+public final class RecipeSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Cards only ever show the first few tags
+    public static final int MAX_TAGS = 3;
+
+    private final String id;
+    private final String title;
+    private final String description;
+    private final String cuisineType;
+    private final String difficultyLevel;
+    private final int totalTime;
+    private final int servings;
+    private final List<String> tags;
+    private final String category;
+    private final String photoPath;
+    private final String userId;
+    private final String authorName;
+    private final double averageRating;
+    private final int totalRatings;
+    private final boolean approved;
+    private final String createdAt;
+
+    public RecipeSummary(Recipe recipe) {
+        this.id = recipe.getId();
+        this.title = recipe.getTitle();
+        this.description = recipe.getDescription();
+        this.cuisineType = recipe.getCuisineType();
+        this.difficultyLevel = recipe.getDifficultyLevel();
+        this.totalTime = recipe.getTotalTime();
+        this.servings = recipe.getServings();
+        List<String> allTags = recipe.getTags();
+        this.tags = allTags.isEmpty() ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(allTags.subList(0, Math.min(MAX_TAGS, allTags.size()))));
+        this.category = recipe.getCategory();
+        this.photoPath = recipe.getPhotoPath();
+        this.userId = recipe.getUserId();
+        this.authorName = recipe.getAuthorName();
+        this.averageRating = recipe.getAverageRating();
+        this.totalRatings = recipe.getTotalRatings();
+        this.approved = recipe.isApproved();
+        this.createdAt = recipe.getCreatedAt();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getCuisineType() {
+        return cuisineType;
+    }
+
+    public String getDifficultyLevel() {
+        return difficultyLevel;
+    }
+
+    public int getTotalTime() {
+        return totalTime;
+    }
+
+    public int getServings() {
+        return servings;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getPhotoPath() {
+        return photoPath;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public int getTotalRatings() {
+        return totalRatings;
+    }
+
+    public boolean isApproved() {
+        return approved;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -24,6 +24,12 @@ public class Review implements Serializable {
         this.comment = comment;
     }
 
+    public Review(Review other) {
+        this(other.recipeId, other.userId, other.username, other.rating, other.comment);
+        this.id = other.id;
+        this.createdAt = other.createdAt;
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -30,6 +30,17 @@ public class User implements Serializable {
         this.fullName = fullName;
     }
 
+    public User(User other) {
+        this.id = other.id;
+        this.username = other.username;
+        this.email = other.email;
+        this.password = other.password;
+        this.fullName = other.fullName;
+        this.role = other.role;
+        this.favoriteRecipeIds = new ArrayList<>(other.favoriteRecipeIds);
+        this.bookmarkedRecipeIds = new ArrayList<>(other.bookmarkedRecipeIds);
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
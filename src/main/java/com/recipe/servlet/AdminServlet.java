@@ -1,8 +1,12 @@
 package com.recipe.servlet;
 
+import com.recipe.dao.CatalogStats;
 import com.recipe.dao.RecipeDAO;
-import com.recipe.model.Recipe;
+import com.recipe.dao.RecipePage;
+import com.recipe.dao.RecipeQuery;
+import com.recipe.dao.RecipeSort;
 import com.recipe.model.User;
+import com.recipe.util.FavoritesManager;
 import com.recipe.util.UserManager;
 
 import javax.servlet.ServletException;
@@ -11,9 +15,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class AdminServlet extends HttpServlet {
+    private static final int PAGE_SIZE = 25;
     private RecipeDAO recipeDAO = new RecipeDAO();
 
     @Override
@@ -73,38 +80,49 @@ public class AdminServlet extends HttpServlet {
 
     private void showDashboard(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        List<Recipe> allRecipes = recipeDAO.getAllRecipes();
-        List<Recipe> pendingRecipes = allRecipes.stream()
-                .filter(r -> !r.isApproved())
-                .collect(java.util.stream.Collectors.toList());
-        List<Recipe> approvedRecipes = allRecipes.stream()
-                .filter(Recipe::isApproved)
-                .collect(java.util.stream.Collectors.toList());
-        List<User> allUsers = UserManager.getAllUsers();
-
-        request.setAttribute("totalRecipes", allRecipes.size());
-        request.setAttribute("pendingRecipes", pendingRecipes.size());
-        request.setAttribute("approvedRecipes", approvedRecipes.size());
-        request.setAttribute("totalUsers", allUsers.size());
-        request.setAttribute("recentRecipes", allRecipes.stream()
-                .sorted((r1, r2) -> r2.getCreatedAt().compareTo(r1.getCreatedAt()))
-                .limit(5)
-                .collect(java.util.stream.Collectors.toList()));
+        CatalogStats stats = recipeDAO.getCatalogStats();
+        request.setAttribute("stats", stats);
+        request.setAttribute("totalRecipes", stats.getTotalRecipes());
+        request.setAttribute("pendingRecipes", stats.getPendingRecipes());
+        request.setAttribute("approvedRecipes", stats.getApprovedRecipes());
+        request.setAttribute("totalUsers", UserManager.getUserCount());
+        request.setAttribute("recentRecipes",
+                recipeDAO.queryPage(RecipeQuery.everything(), RecipeSort.NEWEST, 0, 5).getRecipes());
 
         request.getRequestDispatcher("/jsp/admin-dashboard.jsp").forward(request, response);
     }
 
     private void showRecipes(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        List<Recipe> recipes = recipeDAO.getAllRecipes();
-        request.setAttribute("recipes", recipes);
+        RecipeSort sort = RecipeSort.fromParam(request.getParameter("sort"), RecipeSort.NEWEST);
+        int offset = 0;
+        String page = request.getParameter("page");
+        if (page != null) {
+            try {
+                offset = Math.max(0, Integer.parseInt(page) - 1) * PAGE_SIZE;
+            } catch (NumberFormatException e) {
+                // show the first page
+            }
+        }
+        RecipePage recipePage = recipeDAO.queryPage(RecipeQuery.everything(), sort,
+                request.getParameter("after"), offset, PAGE_SIZE);
+        request.setAttribute("recipePage", recipePage);
+        request.setAttribute("recipes", recipePage.getRecipes());
         request.getRequestDispatcher("/jsp/admin-recipes.jsp").forward(request, response);
     }
 
     private void showUsers(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         List<User> users = UserManager.getAllUsers();
+        Map<String, Integer> favoriteCounts = new HashMap<>();
+        Map<String, Integer> bookmarkCounts = new HashMap<>();
+        for (User u : users) {
+            favoriteCounts.put(u.getId(), FavoritesManager.countForUser(FavoritesManager.Relation.FAVORITE, u.getId()));
+            bookmarkCounts.put(u.getId(), FavoritesManager.countForUser(FavoritesManager.Relation.BOOKMARK, u.getId()));
+        }
         request.setAttribute("users", users);
+        request.setAttribute("favoriteCounts", favoriteCounts);
+        request.setAttribute("bookmarkCounts", bookmarkCounts);
         request.getRequestDispatcher("/jsp/admin-users.jsp").forward(request, response);
     }
 
@@ -112,11 +130,8 @@ public class AdminServlet extends HttpServlet {
             throws ServletException, IOException {
         String id = request.getParameter("id");
         try {
-            Recipe recipe = recipeDAO.getRecipeById(id);
-            if (recipe != null) {
-                recipe.setApproved(true);
-                recipeDAO.saveRecipe(recipe);
-            }
+            // Applied to the current version, so it cannot undo a concurrent edit
+            recipeDAO.updateRecipe(id, recipe -> recipe.setApproved(true));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -1,11 +1,16 @@
 package com.recipe.servlet;
 
 import com.recipe.dao.RecipeDAO;
+import com.recipe.dao.RecipePage;
+import com.recipe.dao.RecipeQuery;
+import com.recipe.dao.RecipeSort;
 import com.recipe.model.Recipe;
 import com.recipe.model.Ingredient;
 import com.recipe.model.User;
 import com.recipe.model.Review;
-import com.recipe.util.UserManager;
+import com.recipe.util.FavoritesManager;
+import com.recipe.util.IdGenerator;
+import com.recipe.util.RecipeConflictException;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
@@ -25,6 +30,8 @@ import java.util.List;
 import java.util.Map;
 
 public class RecipeServlet extends HttpServlet {
+    private static final int PAGE_SIZE = 12;
+    private static final int REVIEW_PAGE_SIZE = 10;
     private RecipeDAO recipeDAO = new RecipeDAO();
 
     @Override
@@ -107,54 +114,59 @@ public class RecipeServlet extends HttpServlet {
         HttpSession session = request.getSession();
         User user = (User) session.getAttribute("user");
         
-        String search = request.getParameter("search");
-        String category = request.getParameter("category");
-        String cuisineType = request.getParameter("cuisineType");
-        String difficulty = request.getParameter("difficulty");
-
-        List<Recipe> recipes;
         String userId = (user != null) ? user.getId() : null;
 
-        if (user != null && user.isAdmin()) {
-            recipes = recipeDAO.getAllRecipes();
-        } else {
-            recipes = recipeDAO.getRecipesForUser(userId);
-        }
+        // Every filter given is applied together in a single indexed query
+        RecipeQuery query = (user != null && user.isAdmin())
+                ? RecipeQuery.everything() : RecipeQuery.visibleTo(userId);
+        String search = request.getParameter("search");
+        query.setText(search);
+        query.setCategory(request.getParameter("category"));
+        query.setCuisineType(request.getParameter("cuisineType"));
+        query.setDifficulty(request.getParameter("difficulty"));
+        query.setAuthorId(request.getParameter("author"));
+        query.setMaxTotalTime(parseInteger(request.getParameter("maxTime")));
+        query.setMinRating(parseDouble(request.getParameter("minRating")));
+
+        // Relevance when searching, newest first otherwise
+        RecipeSort sort = RecipeSort.fromParam(request.getParameter("sort"),
+                (search != null && !search.trim().isEmpty()) ? RecipeSort.RELEVANCE : RecipeSort.NEWEST);
+        Integer page = parseInteger(request.getParameter("page"));
+        int offset = (page != null && page > 1) ? (page - 1) * PAGE_SIZE : 0;
+
+        RecipePage recipePage = recipeDAO.queryPage(query, sort, request.getParameter("after"), offset, PAGE_SIZE);
+
+        request.setAttribute("recipePage", recipePage);
+        request.setAttribute("recipes", recipePage.getRecipes());
+        request.getRequestDispatcher("/jsp/recipe-list.jsp").forward(request, response);
+    }
 
-        if (search != null && !search.isEmpty()) {
-            if (user != null && user.isAdmin()) {
-                recipes = recipeDAO.searchRecipes(search);
-            } else {
-                recipes = recipeDAO.searchRecipes(search, userId);
-            }
-        } else if (category != null && !category.isEmpty()) {
-            if (user != null && user.isAdmin()) {
-                recipes = recipeDAO.filterByCategory(category);
-            } else {
-                recipes = recipeDAO.filterByCategory(category, userId);
-            }
-        } else if (cuisineType != null && !cuisineType.isEmpty()) {
-            if (user != null && user.isAdmin()) {
-                recipes = recipeDAO.filterByCuisineType(cuisineType);
-            } else {
-                recipes = recipeDAO.filterByCuisineType(cuisineType, userId);
-            }
-        } else if (difficulty != null && !difficulty.isEmpty()) {
-            if (user != null && user.isAdmin()) {
-                recipes = recipeDAO.filterByDifficulty(difficulty);
-            } else {
-                recipes = recipeDAO.filterByDifficulty(difficulty, userId);
-            }
+    private static Integer parseInteger(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
         }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 
-        request.setAttribute("recipes", recipes);
-        request.getRequestDispatcher("/jsp/recipe-list.jsp").forward(request, response);
+    private static Double parseDouble(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     private void viewRecipe(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         String id = request.getParameter("id");
-        Recipe recipe = recipeDAO.getRecipeById(id);
+        Recipe recipe = recipeDAO.getRecipeForView(id);
 
         if (recipe == null) {
             response.sendRedirect("recipes");
@@ -166,12 +178,16 @@ public class RecipeServlet extends HttpServlet {
 
         // Check if user has favorited/bookmarked this recipe
         if (user != null) {
-            User currentUser = UserManager.getUserById(user.getId());
-            request.setAttribute("isFavorite", currentUser.getFavoriteRecipeIds().contains(id));
-            request.setAttribute("isBookmarked", currentUser.getBookmarkedRecipeIds().contains(id));
+            request.setAttribute("isFavorite",
+                    FavoritesManager.contains(FavoritesManager.Relation.FAVORITE, user.getId(), id));
+            request.setAttribute("isBookmarked",
+                    FavoritesManager.contains(FavoritesManager.Relation.BOOKMARK, user.getId(), id));
         }
+        request.setAttribute("favoriteCount", FavoritesManager.countForRecipe(FavoritesManager.Relation.FAVORITE, id));
 
         request.setAttribute("recipe", recipe);
+        request.setAttribute("reviewPage",
+                recipeDAO.getReviewPage(id, request.getParameter("reviewsBefore"), REVIEW_PAGE_SIZE));
         request.getRequestDispatcher("/jsp/recipe-detail.jsp").forward(request, response);
     }
 
@@ -293,95 +309,48 @@ public class RecipeServlet extends HttpServlet {
             }
             
             String id = formFields.get("id");
+            String uploadedPhoto = photoPath;
             Recipe recipe;
 
             if (id != null && !id.isEmpty()) {
-                recipe = recipeDAO.getRecipeById(id);
-                if (recipe == null || (!user.isAdmin() && !recipe.getUserId().equals(user.getId()))) {
+                Recipe existing = recipeDAO.getRecipeById(id);
+                if (existing == null || (!user.isAdmin() && !existing.getUserId().equals(user.getId()))) {
+                    response.sendRedirect("recipes");
+                    return;
+                }
+                // The version the form was rendered from, so concurrent edits are not overwritten
+                String version = formFields.get("version");
+                long formVersion = version != null && !version.isEmpty() ? Long.parseLong(version) : -1;
+                System.out.println("Attempting to save recipe: " + id + ", Title: " + formFields.get("title"));
+                recipe = recipeDAO.modifyRecipe(id, current -> {
+                    if (formVersion >= 0 && current.getVersion() != formVersion) {
+                        throw new RecipeConflictException(id, formVersion, current.getVersion());
+                    }
+                    applyForm(current, formFields, formArrays, uploadedPhoto, user);
+                });
+                if (recipe == null) {
                     response.sendRedirect("recipes");
                     return;
                 }
             } else {
                 recipe = new Recipe();
-                recipe.setId(com.recipe.util.XMLRecipeManager.generateId());
+                recipe.setId(IdGenerator.nextId("RECIPE_"));
                 recipe.setCreatedAt(java.time.LocalDateTime.now().toString());
+                applyForm(recipe, formFields, formArrays, uploadedPhoto, user);
+                System.out.println("Attempting to save recipe: " + recipe.getId() + ", Title: " + recipe.getTitle());
+                recipeDAO.saveRecipe(recipe);
             }
-
-            recipe.setTitle(formFields.get("title"));
-            recipe.setDescription(formFields.get("description"));
-            recipe.setCuisineType(formFields.get("cuisineType"));
-            recipe.setDifficultyLevel(formFields.get("difficultyLevel"));
-            recipe.setPreparationTime(Integer.parseInt(formFields.getOrDefault("preparationTime", "0")));
-            recipe.setCookingTime(Integer.parseInt(formFields.getOrDefault("cookingTime", "0")));
-            recipe.setServings(Integer.parseInt(formFields.getOrDefault("servings", "1")));
-            recipe.setCategory(formFields.get("category"));
-            recipe.setUserId(user.getId());
-            recipe.setAuthorName(user.getFullName());
-            
-            if (photoPath != null) {
-                recipe.setPhotoPath(photoPath);
-            }
-
-            // Parse ingredients
-            String[] ingredientNames = formArrays.get("ingredientName");
-            String[] quantities = formArrays.get("ingredientQuantity");
-            String[] units = formArrays.get("ingredientUnit");
-
-            List<Ingredient> ingredients = new ArrayList<>();
-            if (ingredientNames != null) {
-                for (int i = 0; i < ingredientNames.length; i++) {
-                    if (ingredientNames[i] != null && !ingredientNames[i].isEmpty()) {
-                        Ingredient ingredient = new Ingredient();
-                        ingredient.setName(ingredientNames[i]);
-                        ingredient.setQuantity(quantities != null && i < quantities.length && 
-                                !quantities[i].isEmpty() ? Double.parseDouble(quantities[i]) : 0);
-                        ingredient.setUnit(units != null && i < units.length ? units[i] : "");
-                        ingredients.add(ingredient);
-                    }
-                }
-            }
-            recipe.setIngredients(ingredients);
-
-            // Parse preparation steps
-            String[] steps = formArrays.get("step");
-            List<String> preparationSteps = new ArrayList<>();
-            if (steps != null) {
-                for (String step : steps) {
-                    if (step != null && !step.trim().isEmpty()) {
-                        preparationSteps.add(step);
-                    }
-                }
-            }
-            recipe.setPreparationSteps(preparationSteps);
-
-            // Parse tags
-            String tagsStr = formFields.get("tags");
-            List<String> tags = new ArrayList<>();
-            if (tagsStr != null && !tagsStr.isEmpty()) {
-                tags = Arrays.asList(tagsStr.split(",\\s*"));
-            }
-            recipe.setTags(tags);
-
-            // If admin is saving, they can approve directly
-            if (user.isAdmin()) {
-                recipe.setApproved(true);
-            }
-
-            // Validate required fields before saving
-            if (recipe.getTitle() == null || recipe.getTitle().trim().isEmpty()) {
-                throw new IllegalArgumentException("Recipe title is required");
-            }
-            if (recipe.getCategory() == null || recipe.getCategory().trim().isEmpty()) {
-                throw new IllegalArgumentException("Recipe category is required");
-            }
-            
-            System.out.println("Attempting to save recipe: " + recipe.getId() + ", Title: " + recipe.getTitle());
-            recipeDAO.saveRecipe(recipe);
             System.out.println("Recipe saved successfully: " + recipe.getId());
             
             // Redirect to the recipe list so user can see their newly created recipe
             response.sendRedirect("recipes");
 
+        } catch (RecipeConflictException e) {
+            System.err.println("Edit conflict while saving recipe: " + e.getMessage());
+            request.setAttribute("recipe", recipeDAO.getRecipeById(e.getRecipeId()));
+            request.setAttribute("error", "This recipe was changed by someone else while you were editing it. "
+                    + "Your changes were not saved; the form now shows the current version.");
+            request.getRequestDispatcher("/jsp/recipe-form.jsp").forward(request, response);
         } catch (NumberFormatException e) {
             e.printStackTrace();
             System.err.println("NumberFormatException while saving recipe: " + e.getMessage());
@@ -401,6 +370,78 @@ public class RecipeServlet extends HttpServlet {
         }
     }
 
+    // Copies the submitted form onto the recipe and validates it
+    private void applyForm(Recipe recipe, Map<String, String> formFields, Map<String, String[]> formArrays,
+                           String photoPath, User user) {
+        recipe.setTitle(formFields.get("title"));
+        recipe.setDescription(formFields.get("description"));
+        recipe.setCuisineType(formFields.get("cuisineType"));
+        recipe.setDifficultyLevel(formFields.get("difficultyLevel"));
+        recipe.setPreparationTime(Integer.parseInt(formFields.getOrDefault("preparationTime", "0")));
+        recipe.setCookingTime(Integer.parseInt(formFields.getOrDefault("cookingTime", "0")));
+        recipe.setServings(Integer.parseInt(formFields.getOrDefault("servings", "1")));
+        recipe.setCategory(formFields.get("category"));
+        recipe.setUserId(user.getId());
+        recipe.setAuthorName(user.getFullName());
+        
+        if (photoPath != null) {
+            recipe.setPhotoPath(photoPath);
+        }
+
+        // Parse ingredients
+        String[] ingredientNames = formArrays.get("ingredientName");
+        String[] quantities = formArrays.get("ingredientQuantity");
+        String[] units = formArrays.get("ingredientUnit");
+
+        List<Ingredient> ingredients = new ArrayList<>();
+        if (ingredientNames != null) {
+            for (int i = 0; i < ingredientNames.length; i++) {
+                if (ingredientNames[i] != null && !ingredientNames[i].isEmpty()) {
+                    Ingredient ingredient = new Ingredient();
+                    ingredient.setName(ingredientNames[i]);
+                    ingredient.setQuantity(quantities != null && i < quantities.length && 
+                            !quantities[i].isEmpty() ? Double.parseDouble(quantities[i]) : 0);
+                    ingredient.setUnit(units != null && i < units.length ? units[i] : "");
+                    ingredients.add(ingredient);
+                }
+            }
+        }
+        recipe.setIngredients(ingredients);
+
+        // Parse preparation steps
+        String[] steps = formArrays.get("step");
+        List<String> preparationSteps = new ArrayList<>();
+        if (steps != null) {
+            for (String step : steps) {
+                if (step != null && !step.trim().isEmpty()) {
+                    preparationSteps.add(step);
+                }
+            }
+        }
+        recipe.setPreparationSteps(preparationSteps);
+
+        // Parse tags
+        String tagsStr = formFields.get("tags");
+        List<String> tags = new ArrayList<>();
+        if (tagsStr != null && !tagsStr.isEmpty()) {
+            tags = Arrays.asList(tagsStr.split(",\\s*"));
+        }
+        recipe.setTags(tags);
+
+        // If admin is saving, they can approve directly
+        if (user.isAdmin()) {
+            recipe.setApproved(true);
+        }
+
+        // Validate required fields before saving
+        if (recipe.getTitle() == null || recipe.getTitle().trim().isEmpty()) {
+            throw new IllegalArgumentException("Recipe title is required");
+        }
+        if (recipe.getCategory() == null || recipe.getCategory().trim().isEmpty()) {
+            throw new IllegalArgumentException("Recipe category is required");
+        }
+    }
+
     private void deleteRecipe(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         HttpSession session = request.getSession();
@@ -443,18 +484,7 @@ public class RecipeServlet extends HttpServlet {
         int rating = Integer.parseInt(request.getParameter("rating"));
 
         try {
-            Recipe recipe = recipeDAO.getRecipeById(recipeId);
-            if (recipe != null) {
-                // Simple rating update - in production, you'd want to track individual user ratings
-                int currentTotal = recipe.getTotalRatings();
-                double currentAvg = recipe.getAverageRating();
-                double newAvg = ((currentAvg * currentTotal) + rating) / (currentTotal + 1);
-                
-                recipe.setAverageRating(newAvg);
-                recipe.setTotalRatings(currentTotal + 1);
-                
-                recipeDAO.saveRecipe(recipe);
-            }
+            recipeDAO.rateRecipe(recipeId, rating);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -477,28 +507,16 @@ public class RecipeServlet extends HttpServlet {
         int rating = Integer.parseInt(request.getParameter("rating"));
 
         try {
-            Recipe recipe = recipeDAO.getRecipeById(recipeId);
-            if (recipe != null) {
-                Review review = new Review();
-                review.setId("REVIEW_" + System.currentTimeMillis());
-                review.setRecipeId(recipeId);
-                review.setUserId(user.getId());
-                review.setUsername(user.getFullName());
-                review.setRating(rating);
-                review.setComment(comment);
-                review.setCreatedAt(java.time.LocalDateTime.now().toString());
-
-                recipe.getReviews().add(review);
-                
-                // Update average rating
-                int total = recipe.getTotalRatings() + 1;
-                double currentAvg = recipe.getAverageRating();
-                double newAvg = ((currentAvg * recipe.getTotalRatings()) + rating) / total;
-                recipe.setAverageRating(newAvg);
-                recipe.setTotalRatings(total);
-
-                recipeDAO.saveRecipe(recipe);
-            }
+            Review review = new Review();
+            review.setId(IdGenerator.nextId("REVIEW_"));
+            review.setRecipeId(recipeId);
+            review.setUserId(user.getId());
+            review.setUsername(user.getFullName());
+            review.setRating(rating);
+            review.setComment(comment);
+            review.setCreatedAt(java.time.LocalDateTime.now().toString());
+
+            recipeDAO.addReview(recipeId, review);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,24 @@
+package com.recipe.servlet;
+
+import com.recipe.dao.RecipeStores;
+import com.recipe.util.FavoritesManager;
+import com.recipe.util.ReviewManager;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+public class StorageLifecycleListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        // Storage is loaded lazily on first use
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        // Stop background threads and force pending journal records to disk
+        RecipeStores.shutdown();
+        FavoritesManager.shutdown();
+        ReviewManager.shutdown();
+    }
+}
@@ -1,6 +1,8 @@
 package com.recipe.servlet;
 
 import com.recipe.model.User;
+import com.recipe.util.FavoritesManager;
+import com.recipe.util.IdGenerator;
 import com.recipe.util.UserManager;
 
 import javax.servlet.ServletException;
@@ -106,9 +108,15 @@ public class UserServlet extends HttpServlet {
             return;
         }
 
+        if (email != null && !email.isEmpty() && UserManager.getUserByEmail(email) != null) {
+            request.setAttribute("error", "Email already registered");
+            request.getRequestDispatcher("/jsp/register.jsp").forward(request, response);
+            return;
+        }
+
         try {
             User user = new User(username, email, password, fullName);
-            user.setId("USER_" + System.currentTimeMillis());
+            user.setId(IdGenerator.nextId("USER_"));
 
             UserManager.saveUser(user);
 
@@ -143,6 +151,10 @@ public class UserServlet extends HttpServlet {
         // Get fresh user data
         User user = UserManager.getUserById(sessionUser.getId());
         request.setAttribute("user", user);
+        request.setAttribute("favoriteCount",
+                FavoritesManager.countForUser(FavoritesManager.Relation.FAVORITE, user.getId()));
+        request.setAttribute("bookmarkCount",
+                FavoritesManager.countForUser(FavoritesManager.Relation.BOOKMARK, user.getId()));
         request.getRequestDispatcher("/jsp/profile.jsp").forward(request, response);
     }
 
@@ -158,17 +170,10 @@ public class UserServlet extends HttpServlet {
 
         try {
             String recipeId = request.getParameter("recipeId");
-            User user = UserManager.getUserById(sessionUser.getId());
-
-            if (user.getFavoriteRecipeIds().contains(recipeId)) {
-                user.getFavoriteRecipeIds().remove(recipeId);
-            } else {
-                user.getFavoriteRecipeIds().add(recipeId);
+            if (recipeId != null && !recipeId.isEmpty()) {
+                FavoritesManager.toggle(FavoritesManager.Relation.FAVORITE, sessionUser.getId(), recipeId);
             }
 
-            UserManager.saveUser(user);
-            session.setAttribute("user", user);
-
             String redirect = request.getParameter("redirect");
             if (redirect != null) {
                 response.sendRedirect(redirect);
@@ -193,17 +198,10 @@ public class UserServlet extends HttpServlet {
 
         try {
             String recipeId = request.getParameter("recipeId");
-            User user = UserManager.getUserById(sessionUser.getId());
-
-            if (user.getBookmarkedRecipeIds().contains(recipeId)) {
-                user.getBookmarkedRecipeIds().remove(recipeId);
-            } else {
-                user.getBookmarkedRecipeIds().add(recipeId);
+            if (recipeId != null && !recipeId.isEmpty()) {
+                FavoritesManager.toggle(FavoritesManager.Relation.BOOKMARK, sessionUser.getId(), recipeId);
             }
 
-            UserManager.saveUser(user);
-            session.setAttribute("user", user);
-
             String redirect = request.getParameter("redirect");
             if (redirect != null) {
                 response.sendRedirect(redirect);
@@ -0,0 +1,116 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dictionary of the values of one recipe attribute that comes from a small vocabulary
+ * (category, cuisine type, difficulty, unit, tag). Readers hand every value they decode
+ * to {@link #intern}, so all recipes share one String per distinct value instead of a
+ * copy each. Indexes and filters work on {@link #code} instead: a dense int per
+ * case-folded value, so "Italian" and "italian" get the same code and matching a facet
+ * is an int comparison.
+ *
+ * <p>Entries are never removed. Interning stops adding new values once a dictionary
+ * holds {@code recipe.dictionary.maxEntries} (default 65536) of them, so free-form input
+ * cannot grow it without bound; such values are simply not shared. Codes are always
+ * assigned, since an index must be able to tell every value apart.
+ */
+public class AttributeDictionary {
+    public static final AttributeDictionary CATEGORIES = new AttributeDictionary();
+    public static final AttributeDictionary CUISINES = new AttributeDictionary();
+    public static final AttributeDictionary DIFFICULTIES = new AttributeDictionary();
+    public static final AttributeDictionary UNITS = new AttributeDictionary();
+    public static final AttributeDictionary TAGS = new AttributeDictionary();
+
+    // Code of a value nobody has been given a code for; matches nothing
+    public static final int UNKNOWN = -1;
+
+    private static final int MAX_ENTRIES = Integer.getInteger("recipe.dictionary.maxEntries", 65536);
+
+    private final Map<String, String> canonical = new ConcurrentHashMap<>();
+    // Exact spelling -> code, so known values are coded without case-folding them again
+    private final Map<String, Integer> codesByValue = new ConcurrentHashMap<>();
+    private final Map<String, Integer> codesByFolded = new ConcurrentHashMap<>();
+    private final List<String> foldedByCode = new CopyOnWriteArrayList<>();
+
+    // The shared instance equal to the value; null stays null
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = canonical.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (canonical.size() >= MAX_ENTRIES) {
+            return value;
+        }
+        shared = canonical.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    // The code of the value ignoring case, assigning one if it is new; null counts as ""
+    public int code(String value) {
+        String key = value != null ? value : "";
+        Integer code = codesByValue.get(key);
+        if (code != null) {
+            return code;
+        }
+        code = codesByFolded.computeIfAbsent(fold(key), folded -> {
+            synchronized (foldedByCode) {
+                foldedByCode.add(folded);
+                return foldedByCode.size() - 1;
+            }
+        });
+        if (codesByValue.size() < MAX_ENTRIES) {
+            codesByValue.put(intern(key), code);
+        }
+        return code;
+    }
+
+    // Like code(), but never assigns: a value no recipe has had is UNKNOWN
+    public int lookup(String value) {
+        String key = value != null ? value : "";
+        Integer code = codesByValue.get(key);
+        if (code == null) {
+            code = codesByFolded.get(fold(key));
+        }
+        return code != null ? code : UNKNOWN;
+    }
+
+    // The case-folded value behind a code
+    public String valueOf(int code) {
+        return code >= 0 && code < foldedByCode.size() ? foldedByCode.get(code) : null;
+    }
+
+    public int size() {
+        return foldedByCode.size();
+    }
+
+    public static String fold(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    // Replaces the dictionary attributes of a freshly read or submitted recipe with shared instances
+    public static void internAttributes(Recipe recipe) {
+        recipe.setCategory(CATEGORIES.intern(recipe.getCategory()));
+        recipe.setCuisineType(CUISINES.intern(recipe.getCuisineType()));
+        recipe.setDifficultyLevel(DIFFICULTIES.intern(recipe.getDifficultyLevel()));
+        // Still-encoded collections are interned when they are decoded
+        LazyRecipe lazy = recipe instanceof LazyRecipe ? (LazyRecipe) recipe : null;
+        if (lazy == null || !lazy.isEncoded(LazyRecipe.INGREDIENTS)) {
+            for (Ingredient ingredient : recipe.getIngredients()) {
+                ingredient.setUnit(UNITS.intern(ingredient.getUnit()));
+            }
+        }
+        if (lazy == null || !lazy.isEncoded(LazyRecipe.TAGS)) {
+            recipe.getTags().replaceAll(TAGS::intern);
+        }
+    }
+}
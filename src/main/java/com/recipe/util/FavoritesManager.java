@@ -0,0 +1,276 @@
+package com.recipe.util;
+
+import com.recipe.model.User;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Favorites and bookmarks, kept apart from the user records. Each relation is held as a
+ * per-user set of recipe ids plus a per-recipe count of users, and every toggle is one
+ * record appended to {@code data/relations.log}, so neither a toggle nor a count depends
+ * on how many links a user or the whole site has.
+ *
+ * <p>On first start the log is seeded from the favorites and bookmarks stored in
+ * users.xml. The log is rewritten with only the live links at startup once removed
+ * links make up most of it.
+ */
+public class FavoritesManager {
+    public enum Relation {
+        FAVORITE, BOOKMARK
+    }
+
+    private static final String LOG_FILE = "relations.log";
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final String FILE_PATH;
+    private static final Object WRITE_LOCK = new Object();
+
+    // relation -> user id -> recipe ids
+    private static final Map<Relation, Map<String, Set<String>>> recipesByUser = new EnumMap<>(Relation.class);
+    // relation -> recipe id -> number of users linking it
+    private static final Map<Relation, Map<String, AtomicInteger>> userCounts = new EnumMap<>(Relation.class);
+    private static FileChannel channel;
+    private static int liveLinks;
+    private static int logRecords;
+
+    static {
+        String dataDir = System.getProperty("recipe.data.dir",
+                System.getProperty("user.dir") + File.separator + "data");
+        FILE_PATH = dataDir + File.separator + LOG_FILE;
+        for (Relation relation : Relation.values()) {
+            recipesByUser.put(relation, new ConcurrentHashMap<>());
+            userCounts.put(relation, new ConcurrentHashMap<>());
+        }
+        load();
+    }
+
+    private static void load() {
+        synchronized (WRITE_LOCK) {
+            try {
+                File file = new File(FILE_PATH);
+                if (file.exists()) {
+                    replay(file);
+                    // Mostly removed links: keep only the live ones
+                    if (logRecords > 2 * liveLinks + 1024) {
+                        writeSnapshot(file);
+                    }
+                } else {
+                    seedFromUsers();
+                    writeSnapshot(file);
+                }
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                System.out.println("Loaded " + liveLinks + " favorites and bookmarks from " + FILE_PATH);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void seedFromUsers() {
+        for (User user : UserManager.getAllUsers()) {
+            for (String recipeId : user.getFavoriteRecipeIds()) {
+                apply(OP_ADD, Relation.FAVORITE, user.getId(), recipeId);
+            }
+            for (String recipeId : user.getBookmarkedRecipeIds()) {
+                apply(OP_ADD, Relation.BOOKMARK, user.getId(), recipeId);
+            }
+        }
+    }
+
+    private static void replay(File file) throws IOException {
+        long validLength = 0;
+        long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                int crc;
+                try {
+                    int length = in.readInt();
+                    // A length the rest of the file cannot hold is a torn or corrupt header
+                    if (length < 0 || length > fileLength - validLength - HEADER_SIZE) {
+                        break;
+                    }
+                    crc = in.readInt();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc != checksum(payload)) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = record.readByte();
+                int relation = record.readByte();
+                if (relation < 0 || relation >= Relation.values().length) {
+                    break;
+                }
+                apply(op, Relation.values()[relation], record.readUTF(), record.readUTF());
+                validLength += HEADER_SIZE + payload.length;
+                logRecords++;
+            }
+        }
+        if (validLength < fileLength) {
+            System.err.println("Truncating damaged relations log tail at offset " + validLength);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+    }
+
+    // Rewrites the log as one add per live link; callers hold WRITE_LOCK
+    private static void writeSnapshot(File file) throws IOException {
+        File tempFile = new File(file.getParentFile(), LOG_FILE + ".tmp");
+        int records = 0;
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+             BufferedOutputStream out = new BufferedOutputStream(fileOut)) {
+            for (Relation relation : Relation.values()) {
+                for (Map.Entry<String, Set<String>> entry : recipesByUser.get(relation).entrySet()) {
+                    for (String recipeId : entry.getValue()) {
+                        out.write(frame(OP_ADD, relation, entry.getKey(), recipeId));
+                        records++;
+                    }
+                }
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        logRecords = records;
+    }
+
+    private static boolean apply(byte op, Relation relation, String userId, String recipeId) {
+        boolean changed;
+        if (op == OP_ADD) {
+            changed = recipesByUser.get(relation)
+                    .computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet())
+                    .add(recipeId);
+        } else {
+            Set<String> recipes = recipesByUser.get(relation).get(userId);
+            changed = recipes != null && recipes.remove(recipeId);
+        }
+        if (changed) {
+            int delta = op == OP_ADD ? 1 : -1;
+            userCounts.get(relation).computeIfAbsent(recipeId, id -> new AtomicInteger()).addAndGet(delta);
+            liveLinks += delta;
+        }
+        return changed;
+    }
+
+    /**
+     * Adds the link if it is missing and removes it otherwise. Returns whether the recipe
+     * is linked afterwards. The change is on disk before this returns.
+     */
+    public static boolean toggle(Relation relation, String userId, String recipeId) throws IOException {
+        synchronized (WRITE_LOCK) {
+            if (channel == null) {
+                throw new IOException("Relations log is not open: " + FILE_PATH);
+            }
+            byte op = contains(relation, userId, recipeId) ? OP_REMOVE : OP_ADD;
+            ByteBuffer buffer = ByteBuffer.wrap(frame(op, relation, userId, recipeId));
+            long start = channel.size();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(start);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            logRecords++;
+            apply(op, relation, userId, recipeId);
+            return op == OP_ADD;
+        }
+    }
+
+    public static boolean contains(Relation relation, String userId, String recipeId) {
+        if (userId == null || recipeId == null) {
+            return false;
+        }
+        Set<String> recipes = recipesByUser.get(relation).get(userId);
+        return recipes != null && recipes.contains(recipeId);
+    }
+
+    public static Set<String> getRecipeIds(Relation relation, String userId) {
+        Set<String> recipes = userId != null ? recipesByUser.get(relation).get(userId) : null;
+        return recipes != null ? Collections.unmodifiableSet(new HashSet<>(recipes)) : Collections.emptySet();
+    }
+
+    public static int countForUser(Relation relation, String userId) {
+        Set<String> recipes = userId != null ? recipesByUser.get(relation).get(userId) : null;
+        return recipes != null ? recipes.size() : 0;
+    }
+
+    // Number of users that favorited (or bookmarked) the recipe
+    public static int countForRecipe(Relation relation, String recipeId) {
+        AtomicInteger count = recipeId != null ? userCounts.get(relation).get(recipeId) : null;
+        return count != null ? count.get() : 0;
+    }
+
+    public static void shutdown() {
+        synchronized (WRITE_LOCK) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static byte[] frame(byte op, Relation relation, String userId, String recipeId) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeByte(op);
+        payload.writeByte(relation.ordinal());
+        payload.writeUTF(userId);
+        payload.writeUTF(recipeId);
+        byte[] body = payloadBytes.toByteArray();
+
+        ByteArrayOutputStream frameBytes = new ByteArrayOutputStream(HEADER_SIZE + body.length);
+        DataOutputStream frame = new DataOutputStream(frameBytes);
+        frame.writeInt(body.length);
+        frame.writeInt(checksum(body));
+        frame.write(body);
+        return frameBytes.toByteArray();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
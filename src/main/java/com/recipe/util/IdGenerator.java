@@ -0,0 +1,131 @@
+package com.recipe.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style ids for recipes, users and reviews. Each id is a positive 64-bit number
+ * made of 41 bits of milliseconds since {@link #EPOCH_MILLIS}, a 10-bit node id and a 12-bit
+ * sequence, written after a type prefix ({@code RECIPE_8645…}). Ids from one node are unique
+ * and strictly increasing, so their numeric part orders records by creation time.
+ *
+ * <p>Generation is a single compare-and-set on the last issued timestamp and sequence. If
+ * the clock steps back, or a millisecond runs out of sequence numbers, the generator keeps
+ * counting from the last timestamp it issued instead of waiting for the clock to catch up.
+ * The stores call {@link #observe} for every id they load, so a clock that went back
+ * while the application was down cannot reissue an id either.
+ *
+ * <p>The node id comes from the {@code recipe.nodeId} system property (0-1023) and must
+ * differ between instances writing to the same data directory.
+ */
+public class IdGenerator {
+    // 2020-01-01T00:00:00Z
+    public static final long EPOCH_MILLIS = 1577836800000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final long NODE_ID = nodeId();
+
+    // Last issued timestamp (relative to the epoch) and sequence, as timestamp << 12 | sequence
+    private static final AtomicLong lastState = new AtomicLong();
+
+    private static long nodeId() {
+        long node = Long.getLong("recipe.nodeId", 0L);
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalStateException("recipe.nodeId must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        return node;
+    }
+
+    public static long nextId() {
+        while (true) {
+            long last = lastState.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            // Same millisecond or the clock went back: next sequence number, and when the
+            // sequence overflows it carries into the timestamp, moving a millisecond ahead
+            long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (lastState.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT
+                        | NODE_ID << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public static String nextId(String prefix) {
+        return prefix + nextId();
+    }
+
+    /**
+     * Makes sure every later id sorts after the given one. Legacy and foreign ids are
+     * ignored.
+     */
+    public static void observe(String id) {
+        long key = sortKey(id);
+        if (key <= 0) {
+            return;
+        }
+        long observed = (key >>> TIMESTAMP_SHIFT) << SEQUENCE_BITS | (key & SEQUENCE_MASK);
+        long last;
+        do {
+            last = lastState.get();
+            if (last >= observed) {
+                return;
+            }
+        } while (!lastState.compareAndSet(last, observed));
+    }
+
+    /**
+     * Creation-time order key of an id: larger is newer. Generated ids ({@code PREFIX_n})
+     * map to their numeric value. Legacy ids ({@code PREFIX_<millis>_<random>}) map to the
+     * same layout with node 0, so they interleave with generated ids by time. Returns -1
+     * for anything else.
+     */
+    public static long sortKey(String id) {
+        if (id == null) {
+            return -1;
+        }
+        int first = id.indexOf('_');
+        int second = first >= 0 ? id.indexOf('_', first + 1) : -1;
+        try {
+            if (first >= 0 && second < 0) {
+                long value = Long.parseLong(id.substring(first + 1));
+                return value > 0 ? value : -1;
+            }
+            if (second > 0 && id.indexOf('_', second + 1) < 0) {
+                long millis = Long.parseLong(id.substring(first + 1, second)) - EPOCH_MILLIS;
+                long random = Long.parseLong(id.substring(second + 1));
+                if (millis < 0 || random < 0) {
+                    return -1;
+                }
+                return millis << TIMESTAMP_SHIFT | (random & SEQUENCE_MASK);
+            }
+        } catch (NumberFormatException e) {
+            // Not one of ours
+        }
+        return -1;
+    }
+
+    /**
+     * Order key for a record whose id carries no time, taken from its ISO-8601 local
+     * creation timestamp. Returns -1 if that cannot be read either.
+     */
+    public static long sortKeyOf(String createdAt) {
+        if (createdAt == null || createdAt.isEmpty()) {
+            return -1;
+        }
+        try {
+            long millis = LocalDateTime.parse(createdAt).atZone(ZoneId.systemDefault())
+                    .toInstant().toEpochMilli() - EPOCH_MILLIS;
+            return millis >= 0 ? millis << TIMESTAMP_SHIFT : -1;
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recipe read from a stored record whose collections stay encoded until they are
+ * first asked for. The scalar fields are decoded up front; ingredients, steps, tags and
+ * reviews are decoded by the getter that first needs them, so a listing or a search
+ * that reads titles and ratings never builds the rest. Setting a collection replaces
+ * its encoded form. Copies share the record and stay lazy.
+ *
+ * <p>Resident recipes are read by many threads; each collection is decoded once, under
+ * the recipe's monitor, and published through {@code decoded}.
+ */
+public abstract class LazyRecipe extends Recipe {
+    private static final long serialVersionUID = 1L;
+
+    static final int INGREDIENTS = 1;
+    static final int STEPS = 2;
+    static final int TAGS = 4;
+    static final int REVIEWS = 8;
+
+    // Bit set of the collections already in the Recipe fields
+    private volatile int decoded;
+
+    protected LazyRecipe() {
+    }
+
+    // Copies the scalars and whatever the original has decoded; the rest stays in the record
+    protected LazyRecipe(LazyRecipe other) {
+        this(other, other.decoded);
+    }
+
+    // The copies are made before the Recipe fields exist, so the constructor never calls out with this
+    private LazyRecipe(LazyRecipe other, int done) {
+        super(other,
+                (done & INGREDIENTS) != 0 ? copyIngredients(other.getIngredients()) : new ArrayList<>(),
+                (done & STEPS) != 0 ? new ArrayList<>(other.getPreparationSteps()) : new ArrayList<>(),
+                (done & TAGS) != 0 ? new ArrayList<>(other.getTags()) : new ArrayList<>(),
+                (done & REVIEWS) != 0 ? copyReviews(other.getReviews()) : new ArrayList<>());
+        decoded = done;
+    }
+
+    private static List<Ingredient> copyIngredients(List<Ingredient> ingredients) {
+        List<Ingredient> copies = new ArrayList<>(ingredients.size());
+        for (Ingredient ingredient : ingredients) {
+            copies.add(new Ingredient(ingredient));
+        }
+        return copies;
+    }
+
+    private static List<Review> copyReviews(List<Review> reviews) {
+        List<Review> copies = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            copies.add(new Review(review));
+        }
+        return copies;
+    }
+
+    protected abstract List<Ingredient> decodeIngredients() throws IOException;
+
+    protected abstract List<String> decodePreparationSteps() throws IOException;
+
+    protected abstract List<String> decodeTags() throws IOException;
+
+    protected abstract List<Review> decodeReviews() throws IOException;
+
+    @Override
+    public abstract LazyRecipe copy();
+
+    // Whether the collection is still only in the record, so its encoded form is current
+    boolean isEncoded(int collection) {
+        return (decoded & collection) == 0;
+    }
+
+    @Override
+    public List<Ingredient> getIngredients() {
+        if (isEncoded(INGREDIENTS)) {
+            decode(INGREDIENTS);
+        }
+        return super.getIngredients();
+    }
+
+    @Override
+    public void setIngredients(List<Ingredient> ingredients) {
+        synchronized (this) {
+            super.setIngredients(ingredients);
+            decoded |= INGREDIENTS;
+        }
+    }
+
+    @Override
+    public List<String> getPreparationSteps() {
+        if (isEncoded(STEPS)) {
+            decode(STEPS);
+        }
+        return super.getPreparationSteps();
+    }
+
+    @Override
+    public void setPreparationSteps(List<String> preparationSteps) {
+        synchronized (this) {
+            super.setPreparationSteps(preparationSteps);
+            decoded |= STEPS;
+        }
+    }
+
+    @Override
+    public List<String> getTags() {
+        if (isEncoded(TAGS)) {
+            decode(TAGS);
+        }
+        return super.getTags();
+    }
+
+    @Override
+    public void setTags(List<String> tags) {
+        synchronized (this) {
+            super.setTags(tags);
+            decoded |= TAGS;
+        }
+    }
+
+    @Override
+    public List<Review> getReviews() {
+        if (isEncoded(REVIEWS)) {
+            decode(REVIEWS);
+        }
+        return super.getReviews();
+    }
+
+    @Override
+    public void setReviews(List<Review> reviews) {
+        synchronized (this) {
+            super.setReviews(reviews);
+            decoded |= REVIEWS;
+        }
+    }
+
+    private synchronized void decode(int collection) {
+        if (!isEncoded(collection)) {
+            return;
+        }
+        try {
+            switch (collection) {
+                case INGREDIENTS:
+                    super.setIngredients(decodeIngredients());
+                    break;
+                case STEPS:
+                    super.setPreparationSteps(decodePreparationSteps());
+                    break;
+                case TAGS:
+                    super.setTags(decodeTags());
+                    break;
+                default:
+                    super.setReviews(decodeReviews());
+            }
+        } catch (IOException e) {
+            // The record was checked when it was read, so this is damage after the fact
+            throw new UncheckedIOException("Cannot decode recipe " + getId(), e);
+        }
+        decoded |= collection;
+    }
+
+    // For a one-off read of every field: a throwaway copy, so the given recipe stays lazy
+    static Recipe detached(Recipe recipe) {
+        return recipe instanceof LazyRecipe ? ((LazyRecipe) recipe).copy() : recipe;
+    }
+
+    // Serialized as a plain recipe, without the record it was read from
+    protected Object writeReplace() {
+        return new Recipe(this);
+    }
+}
@@ -0,0 +1,134 @@
+package com.recipe.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects star ratings in memory and hands them to the catalog in periodic batches.
+ * Each recipe has one {@link LongAdder} per star, so a vote is a single contention-free
+ * increment and concurrent votes are never lost. Count and sum are derived from the
+ * histogram, which keeps the three consistent however a flush interleaves with voting.
+ */
+public class RatingAggregator {
+    public interface Flusher {
+        // Votes per star (index 0 = 1 star) accumulated for each recipe since the last flush
+        void flush(Map<String, int[]> votesPerStar) throws Exception;
+    }
+
+    private static final int STARS = 5;
+
+    private final ConcurrentHashMap<String, LongAdder[]> pending = new ConcurrentHashMap<>();
+    private final Flusher flusher;
+    private final long flushIntervalMillis;
+    private ScheduledExecutorService scheduler;
+
+    public RatingAggregator(Flusher flusher, long flushIntervalMillis) {
+        this.flusher = flusher;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recipe-rating-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Stops the schedule and flushes whatever is still pending
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushIntervalMillis + 5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        flushQuietly();
+    }
+
+    public void record(String recipeId, int stars) {
+        if (stars < 1 || stars > STARS) {
+            throw new IllegalArgumentException("Rating must be between 1 and " + STARS + ": " + stars);
+        }
+        pending.computeIfAbsent(recipeId, id -> newCounters())[stars - 1].increment();
+    }
+
+    // Votes recorded but not flushed yet, or null if there are none
+    public int[] pendingVotes(String recipeId) {
+        LongAdder[] counters = recipeId != null ? pending.get(recipeId) : null;
+        if (counters == null) {
+            return null;
+        }
+        int[] votes = new int[STARS];
+        boolean any = false;
+        for (int i = 0; i < STARS; i++) {
+            votes[i] = (int) counters[i].sum();
+            any |= votes[i] != 0;
+        }
+        return any ? votes : null;
+    }
+
+    /**
+     * Drains every recipe's counters and passes the deltas to the flusher in one call.
+     * If the flusher fails the deltas are added back and go out with the next flush.
+     */
+    public synchronized void flush() throws Exception {
+        Map<String, int[]> batch = new HashMap<>();
+        for (Map.Entry<String, LongAdder[]> entry : pending.entrySet()) {
+            int[] votes = new int[STARS];
+            boolean any = false;
+            for (int i = 0; i < STARS; i++) {
+                // Each vote lands in exactly one bucket, so it is drained exactly once
+                votes[i] = (int) entry.getValue()[i].sumThenReset();
+                any |= votes[i] != 0;
+            }
+            if (any) {
+                batch.put(entry.getKey(), votes);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flusher.flush(batch);
+        } catch (Exception e) {
+            for (Map.Entry<String, int[]> entry : batch.entrySet()) {
+                LongAdder[] counters = pending.computeIfAbsent(entry.getKey(), id -> newCounters());
+                for (int i = 0; i < STARS; i++) {
+                    counters[i].add(entry.getValue()[i]);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // The votes stay pending and are retried on the next run
+            e.printStackTrace();
+        }
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[STARS];
+        for (int i = 0; i < STARS; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
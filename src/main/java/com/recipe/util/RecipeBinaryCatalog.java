@@ -0,0 +1,282 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of a binary catalog written by {@link RecipeBinaryWriter}. Opening one
+ * maps the file and checks the header; nothing else is read until it is asked for. A
+ * recipe is decoded from its record on each access, and a string from the shared table
+ * the first time any record refers to it. Lookups by id binary-search the sorted index.
+ *
+ * <p>Only the scalar fields of a recipe are decoded with it. Its ingredients, steps, tags
+ * and reviews are decoded from the mapping when first read (see {@link LazyRecipe}), so
+ * a recipe keeps its catalog mapped until then.
+ *
+ * <p>Safe for concurrent readers. The mapping covers at most 2 GB and is released when
+ * the catalog is no longer referenced.
+ */
+public class RecipeBinaryCatalog {
+    // A recipe over its record: offsets of ingredients, steps, tags and reviews in the mapping
+    private static class Record extends LazyRecipe {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RecipeBinaryCatalog catalog;
+        private final int[] sections;
+
+        Record(RecipeBinaryCatalog catalog, int[] sections) {
+            this.catalog = catalog;
+            this.sections = sections;
+        }
+
+        Record(Record other) {
+            super(other);
+            this.catalog = other.catalog;
+            this.sections = other.sections;
+        }
+
+        @Override
+        public Record copy() {
+            return new Record(this);
+        }
+
+        @Override
+        protected List<Ingredient> decodeIngredients() throws IOException {
+            ByteBuffer in = catalog.at(sections[0]);
+            int count = in.getInt();
+            List<Ingredient> ingredients = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Ingredient ingredient = new Ingredient();
+                ingredient.setName(catalog.string(in.getInt()));
+                ingredient.setQuantity(in.getDouble());
+                ingredient.setUnit(AttributeDictionary.UNITS.intern(catalog.string(in.getInt())));
+                ingredient.setNotes(catalog.string(in.getInt()));
+                ingredients.add(ingredient);
+            }
+            return ingredients;
+        }
+
+        @Override
+        protected List<String> decodePreparationSteps() throws IOException {
+            return catalog.strings(sections[1]);
+        }
+
+        @Override
+        protected List<String> decodeTags() throws IOException {
+            List<String> tags = catalog.strings(sections[2]);
+            tags.replaceAll(AttributeDictionary.TAGS::intern);
+            return tags;
+        }
+
+        @Override
+        protected List<Review> decodeReviews() throws IOException {
+            ByteBuffer in = catalog.at(sections[3]);
+            int count = in.getInt();
+            List<Review> reviews = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Review review = new Review();
+                review.setId(catalog.string(in.getInt()));
+                review.setRecipeId(getId());
+                review.setUserId(catalog.string(in.getInt()));
+                review.setUsername(catalog.string(in.getInt()));
+                review.setRating(in.getInt());
+                review.setComment(catalog.string(in.getInt()));
+                review.setCreatedAt(catalog.string(in.getInt()));
+                reviews.add(review);
+            }
+            return reviews;
+        }
+    }
+
+    // Bytes per entry of the fixed-size collection layouts written by RecipeBinaryWriter
+    private static final int INGREDIENT_SIZE = 20;
+    private static final int REVIEW_SIZE = 24;
+
+    private final ByteBuffer buffer;
+    private final long journalGeneration;
+    private final int recipeCount;
+    private final int stringCount;
+    private final int stringTableOffset;
+    private final int stringDataOffset;
+    private final int indexOffset;
+    // Decoded strings; a racing first use decodes the same value twice, which is harmless
+    private final String[] strings;
+
+    private RecipeBinaryCatalog(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < RecipeBinaryWriter.HEADER_SIZE
+                || buffer.getInt(0) != RecipeBinaryWriter.MAGIC) {
+            throw new IOException("Not a binary recipe catalog");
+        }
+        int version = buffer.getInt(4);
+        if (version != RecipeBinaryWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported binary catalog version: " + version);
+        }
+        journalGeneration = buffer.getLong(8);
+        recipeCount = buffer.getInt(16);
+        stringCount = buffer.getInt(20);
+        long tableOffset = buffer.getLong(24);
+        long index = buffer.getLong(32);
+        if (recipeCount < 0 || stringCount < 0 || tableOffset < RecipeBinaryWriter.HEADER_SIZE
+                || index < tableOffset || index + 12L * recipeCount != buffer.capacity()) {
+            throw new IOException("Damaged binary catalog header");
+        }
+        stringTableOffset = (int) tableOffset;
+        stringDataOffset = stringTableOffset + 4 * (stringCount + 1);
+        indexOffset = (int) index;
+        strings = new String[stringCount];
+    }
+
+    public static RecipeBinaryCatalog open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary catalog too large to map: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RecipeBinaryCatalog(mapped);
+        }
+    }
+
+    public long getJournalGeneration() {
+        return journalGeneration;
+    }
+
+    public int size() {
+        return recipeCount;
+    }
+
+    // Decodes every recipe in the order they were written
+    public void forEach(Consumer<Recipe> sink) throws IOException {
+        int offset = RecipeBinaryWriter.HEADER_SIZE;
+        for (int i = 0; i < recipeCount; i++) {
+            sink.accept(decode(offset));
+            offset += 4 + buffer.getInt(offset);
+        }
+    }
+
+    public Recipe find(String id) throws IOException {
+        if (id == null) {
+            return null;
+        }
+        int low = 0;
+        int high = recipeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = indexOffset + 12 * mid;
+            int cmp = string(buffer.getInt(entry)).compareTo(id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return decode((int) buffer.getLong(entry + 4));
+            }
+        }
+        return null;
+    }
+
+    private Recipe decode(int offset) throws IOException {
+        int length = buffer.getInt(offset);
+        if (length < 0 || offset + 4L + length > stringTableOffset) {
+            throw new IOException("Damaged binary catalog record at offset " + offset);
+        }
+        try {
+            return decodeRecord(offset, length);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Damaged binary catalog record at offset " + offset, e);
+        }
+    }
+
+    // Field order must match RecipeBinaryWriter.writeRecipe
+    private Recipe decodeRecord(int offset, int length) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        in.limit(offset + 4 + length).position(offset + 4);
+
+        int[] sections = new int[4];
+        Record recipe = new Record(this, sections);
+        recipe.setId(string(in.getInt()));
+        recipe.setTitle(string(in.getInt()));
+        recipe.setDescription(string(in.getInt()));
+        recipe.setCuisineType(AttributeDictionary.CUISINES.intern(string(in.getInt())));
+        recipe.setDifficultyLevel(AttributeDictionary.DIFFICULTIES.intern(string(in.getInt())));
+        recipe.setPreparationTime(in.getInt());
+        recipe.setCookingTime(in.getInt());
+        recipe.setServings(in.getInt());
+        recipe.setCategory(AttributeDictionary.CATEGORIES.intern(string(in.getInt())));
+        recipe.setPhotoPath(string(in.getInt()));
+        recipe.setUserId(string(in.getInt()));
+        recipe.setAuthorName(string(in.getInt()));
+        recipe.setTotalRatings(in.getInt());
+        recipe.setRatingSum(in.getLong());
+        int[] histogram = new int[5];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = in.getInt();
+        }
+        recipe.setRatingHistogram(histogram);
+        recipe.setApproved(in.get() != 0);
+        recipe.setCreatedAt(string(in.getInt()));
+        recipe.setVersion(in.getLong());
+
+        // Collections are fixed-size entries, so they are located without being read
+        int position = in.position();
+        int[] entrySizes = {INGREDIENT_SIZE, 4, 4, REVIEW_SIZE};
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = position;
+            int count = in.getInt(position);
+            if (count < 0 || position + 4L + (long) count * entrySizes[i] > in.limit()) {
+                throw new IOException("Damaged binary catalog record at offset " + offset);
+            }
+            position += 4 + count * entrySizes[i];
+        }
+        return recipe;
+    }
+
+    // A view of the mapping positioned at the given offset
+    private ByteBuffer at(int offset) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        return in;
+    }
+
+    // A count followed by that many string refs
+    private List<String> strings(int offset) throws IOException {
+        ByteBuffer in = at(offset);
+        int count = in.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(string(in.getInt()));
+        }
+        return values;
+    }
+
+    private String string(int ref) throws IOException {
+        if (ref == -1) {
+            return null;
+        }
+        if (ref < 0 || ref >= stringCount) {
+            throw new IOException("Damaged binary catalog string reference: " + ref);
+        }
+        String value = strings[ref];
+        if (value == null) {
+            int start = stringDataOffset + buffer.getInt(stringTableOffset + 4 * ref);
+            int end = stringDataOffset + buffer.getInt(stringTableOffset + 4 * (ref + 1));
+            byte[] bytes = new byte[end - start];
+            buffer.duplicate().position(start).get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[ref] = value;
+        }
+        return value;
+    }
+}
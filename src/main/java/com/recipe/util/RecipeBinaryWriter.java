@@ -0,0 +1,175 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the binary catalog layout read by {@link RecipeBinaryCatalog}, the compact
+ * alternative to recipes.xml. All values are big-endian:
+ *
+ * <pre>
+ * header   magic "RCAT", int format version, long journal generation, int recipe count,
+ *          int string count, long string table offset, long index offset
+ * records  per recipe: int length, then the fields; every string is an int reference
+ *          into the string table (-1 for null)
+ * strings  int[count + 1] end offsets relative to the string data, then the UTF-8 data
+ * index    per recipe sorted by id: int id reference, long record offset
+ * </pre>
+ *
+ * Each distinct string is stored once, so categories, cuisines, units, tags and
+ * author names cost four bytes per use.
+ */
+public class RecipeBinaryWriter {
+    static final int MAGIC = 0x52434154; // "RCAT"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8 + 8;
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    public static void write(OutputStream out, Iterable<Recipe> recipes, long journalGeneration)
+            throws IOException {
+        new RecipeBinaryWriter().writeCatalog(out, recipes, journalGeneration);
+    }
+
+    private void writeCatalog(OutputStream out, Iterable<Recipe> recipes, long journalGeneration)
+            throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        List<String> ids = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        ByteArrayOutputStream scratch = new ByteArrayOutputStream(1024);
+        for (Recipe recipe : recipes) {
+            scratch.reset();
+            writeRecipe(new DataOutputStream(scratch), LazyRecipe.detached(recipe));
+            ids.add(recipe.getId());
+            offsets.add((long) HEADER_SIZE + records.size());
+            records.writeInt(scratch.size());
+            scratch.writeTo(records);
+        }
+        records.flush();
+
+        // Index sorted by id so a single recipe can be found without decoding the others
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+        int[] idRefs = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            idRefs[i] = ref(ids.get(order[i]));
+        }
+
+        byte[][] encoded = new byte[strings.size()][];
+        int stringDataLength = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            stringDataLength += encoded[i].length;
+        }
+        long stringTableOffset = HEADER_SIZE + (long) recordBytes.size();
+        long indexOffset = stringTableOffset + 4L * (encoded.length + 1) + stringDataLength;
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeLong(journalGeneration);
+        data.writeInt(ids.size());
+        data.writeInt(encoded.length);
+        data.writeLong(stringTableOffset);
+        data.writeLong(indexOffset);
+        recordBytes.writeTo(data);
+
+        int end = 0;
+        data.writeInt(0);
+        for (byte[] bytes : encoded) {
+            end += bytes.length;
+            data.writeInt(end);
+        }
+        for (byte[] bytes : encoded) {
+            data.write(bytes);
+        }
+
+        for (int i = 0; i < order.length; i++) {
+            data.writeInt(idRefs[i]);
+            data.writeLong(offsets.get(order[i]));
+        }
+        data.flush();
+    }
+
+    // Field order must match RecipeBinaryCatalog.decode
+    private void writeRecipe(DataOutputStream out, Recipe recipe) throws IOException {
+        out.writeInt(ref(recipe.getId()));
+        out.writeInt(ref(recipe.getTitle()));
+        out.writeInt(ref(recipe.getDescription()));
+        out.writeInt(ref(recipe.getCuisineType()));
+        out.writeInt(ref(recipe.getDifficultyLevel()));
+        out.writeInt(recipe.getPreparationTime());
+        out.writeInt(recipe.getCookingTime());
+        out.writeInt(recipe.getServings());
+        out.writeInt(ref(recipe.getCategory()));
+        out.writeInt(ref(recipe.getPhotoPath()));
+        out.writeInt(ref(recipe.getUserId()));
+        out.writeInt(ref(recipe.getAuthorName()));
+        out.writeInt(recipe.getTotalRatings());
+        out.writeLong(recipe.getRatingSum());
+        for (int votes : recipe.getRatingHistogram()) {
+            out.writeInt(votes);
+        }
+        out.writeBoolean(recipe.isApproved());
+        out.writeInt(ref(recipe.getCreatedAt()));
+        out.writeLong(recipe.getVersion());
+
+        out.writeInt(recipe.getIngredients().size());
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            out.writeInt(ref(ingredient.getName()));
+            out.writeDouble(ingredient.getQuantity());
+            out.writeInt(ref(ingredient.getUnit()));
+            out.writeInt(ref(ingredient.getNotes()));
+        }
+
+        out.writeInt(recipe.getPreparationSteps().size());
+        for (String step : recipe.getPreparationSteps()) {
+            out.writeInt(ref(step));
+        }
+
+        out.writeInt(recipe.getTags().size());
+        for (String tag : recipe.getTags()) {
+            out.writeInt(ref(tag));
+        }
+
+        out.writeInt(recipe.getReviews().size());
+        for (Review review : recipe.getReviews()) {
+            out.writeInt(ref(review.getId()));
+            out.writeInt(ref(review.getUserId()));
+            out.writeInt(ref(review.getUsername()));
+            out.writeInt(review.getRating());
+            out.writeInt(ref(review.getComment()));
+            out.writeInt(ref(review.getCreatedAt()));
+        }
+        out.flush();
+    }
+
+    private int ref(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,74 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts a catalog snapshot between recipes.xml and the binary layout, keeping every
+ * field and the journal generation, so a data directory can be switched either way.
+ * Run it while the application is stopped:
+ *
+ * <pre>
+ * java com.recipe.util.RecipeCatalogConverter to-binary data/recipes.xml data/recipes.bin
+ * java com.recipe.util.RecipeCatalogConverter to-xml data/recipes.bin data/recipes.xml
+ * </pre>
+ *
+ * Then set {@code recipe.catalog.format} to match; the next compaction removes the old file.
+ */
+public class RecipeCatalogConverter {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 || !("to-binary".equals(args[0]) || "to-xml".equals(args[0]))) {
+            System.err.println("Usage: RecipeCatalogConverter to-binary|to-xml <source> <target>");
+            System.exit(2);
+        }
+        File source = new File(args[1]);
+        File target = new File(args[2]);
+        int count = "to-binary".equals(args[0]) ? xmlToBinary(source, target) : binaryToXml(source, target);
+        System.out.println("Converted " + count + " recipes from " + source + " to " + target);
+    }
+
+    public static int xmlToBinary(File xmlFile, File binaryFile) throws Exception {
+        List<Recipe> recipes = new ArrayList<>();
+        long generation;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFile))) {
+            generation = RecipeXMLReader.read(in, recipes::add);
+        }
+        File tempFile = new File(binaryFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            RecipeBinaryWriter.write(buffered, recipes, generation);
+            buffered.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(tempFile.toPath(), binaryFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        return recipes.size();
+    }
+
+    public static int binaryToXml(File binaryFile, File xmlFile) throws Exception {
+        List<Recipe> recipes = new ArrayList<>();
+        RecipeBinaryCatalog catalog = RecipeBinaryCatalog.open(binaryFile);
+        catalog.forEach(recipes::add);
+        File tempFile = new File(xmlFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            RecipeXMLWriter.write(buffered, recipes, catalog.getJournalGeneration());
+            buffered.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(tempFile.toPath(), xmlFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        return recipes.size();
+    }
+}
@@ -0,0 +1,66 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads the journaled recipe catalog of a data directory as it stands on disk: the last
+ * snapshot (recipes.xml or recipes.bin) with the journal segments it does not cover
+ * replayed over it. {@link XMLRecipeManager} loads its resident catalog this way, and
+ * other stores import it without starting the manager's writer and compactor threads.
+ *
+ * <p>A snapshot or journal that cannot be read to the end fails the read instead of
+ * yielding the recipes before the damage; a torn journal tail left by a crash is cut off
+ * as usual.
+ */
+public class RecipeCatalogReader {
+    public static final String RECIPES_FILE = "recipes.xml";
+    public static final String BINARY_FILE = "recipes.bin";
+    public static final String JOURNAL_FILE = "recipes.journal";
+
+    public static boolean exists(File dataDir) {
+        return new File(dataDir, RECIPES_FILE).exists() || new File(dataDir, BINARY_FILE).exists();
+    }
+
+    /**
+     * Puts every recipe of the catalog into {@code recipes}, keyed by id in catalog order,
+     * and returns the journal replayed up to its last intact record, ready to be opened
+     * for appends.
+     */
+    public static RecipeJournal read(File dataDir, boolean preferBinary, Map<String, Recipe> recipes)
+            throws Exception {
+        long generation = readSnapshot(dataDir, preferBinary, recipe -> recipes.put(recipe.getId(), recipe));
+        RecipeJournal journal = new RecipeJournal(dataDir, JOURNAL_FILE);
+        journal.replay(generation, recipe -> recipes.put(recipe.getId(), recipe), recipes::remove);
+        return journal;
+    }
+
+    /**
+     * Streams the snapshot into the sink and returns the journal generation it covers.
+     * The snapshot in the preferred layout is read; the other one is read if it is the
+     * only one, so switching layouts takes effect with the next compaction.
+     */
+    private static long readSnapshot(File dataDir, boolean preferBinary, Consumer<Recipe> sink) throws Exception {
+        File file = new File(dataDir, preferBinary ? BINARY_FILE : RECIPES_FILE);
+        if (!file.exists()) {
+            file = new File(dataDir, preferBinary ? RECIPES_FILE : BINARY_FILE);
+            if (!file.exists()) {
+                return 0;
+            }
+        }
+        if (file.getName().equals(BINARY_FILE)) {
+            // Mapped, so reading it is decoding records straight out of the page cache
+            RecipeBinaryCatalog catalog = RecipeBinaryCatalog.open(file);
+            catalog.forEach(sink);
+            return catalog.getJournalGeneration();
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return RecipeXMLReader.read(in, sink);
+        }
+    }
+}
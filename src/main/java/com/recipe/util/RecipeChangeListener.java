@@ -0,0 +1,15 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+
+/**
+ * Notified after a mutation has become durable and visible. Callbacks run one at a time
+ * on the commit writer thread, in journal order; the recipes passed in are the shared
+ * repository instances and must not be modified.
+ */
+public interface RecipeChangeListener {
+    // previous is null when the recipe is new
+    void recipeSaved(Recipe previous, Recipe current);
+
+    void recipeDeleted(Recipe previous);
+}
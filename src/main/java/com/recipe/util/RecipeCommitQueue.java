@@ -0,0 +1,153 @@
+package com.recipe.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-writer group commit. Request threads enqueue mutations and get a future back;
+ * one writer thread collects everything that arrives within a short window (or while
+ * the previous batch was being forced to disk), hands the whole batch to the
+ * {@link BatchWriter} as one durable write and then completes every future in it.
+ * N concurrent saves therefore cost one append and one fsync instead of N.
+ */
+public class RecipeCommitQueue {
+    public interface BatchWriter {
+        void write(List<RecipeMutation> batch) throws Exception;
+    }
+
+    private static class Pending {
+        final RecipeMutation mutation;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(RecipeMutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final BatchWriter writer;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Thread thread;
+    // Only changed under the queue's monitor, so no submit can slip in after the writer's last look
+    private volatile boolean running = true;
+
+    public RecipeCommitQueue(BatchWriter writer, long windowMicros, int maxBatchSize) {
+        this.writer = writer;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.thread = new Thread(this::run, "recipe-commit-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public CompletableFuture<Void> submit(RecipeMutation mutation) {
+        Pending pending = new Pending(mutation);
+        synchronized (this) {
+            if (running) {
+                queue.add(pending);
+                return pending.future;
+            }
+        }
+        pending.future.completeExceptionally(shutDown());
+        return pending.future;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    collectBatch(batch);
+                    commit(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(batch);
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        } finally {
+            // Whatever the writer leaves behind will never be written
+            synchronized (this) {
+                running = false;
+            }
+            List<Pending> abandoned = new ArrayList<>();
+            queue.drainTo(abandoned);
+            fail(abandoned);
+        }
+    }
+
+    private static void fail(List<Pending> pendings) {
+        for (Pending pending : pendings) {
+            pending.future.completeExceptionally(shutDown());
+        }
+    }
+
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("Recipe commit queue is shut down");
+    }
+
+    private void collectBatch(List<Pending> batch) throws InterruptedException {
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<RecipeMutation> mutations = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            mutations.add(pending.mutation);
+        }
+        try {
+            writer.write(mutations);
+            // A rejected mutation fails alone; the rest of the batch is committed
+            for (Pending pending : batch) {
+                Exception rejection = pending.mutation.getRejection();
+                if (rejection != null) {
+                    pending.future.completeExceptionally(rejection);
+                } else {
+                    pending.future.complete(null);
+                }
+            }
+        } catch (Throwable t) {
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    // Commits whatever is still queued, then stops the writer thread. The thread is not
+    // interrupted: an interrupt during a write would close the journal's FileChannel.
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
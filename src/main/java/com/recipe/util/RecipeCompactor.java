@@ -0,0 +1,80 @@
+package com.recipe.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread that folds the recipe journal into a fresh recipes.xml snapshot once
+ * it grows past a size or record threshold, or once it has held records for too long.
+ * The actual snapshot is taken by the supplied task; this class only decides when.
+ */
+public class RecipeCompactor {
+    public interface Task {
+        void compact() throws Exception;
+    }
+
+    private final RecipeJournal journal;
+    private final Task task;
+    private final long maxJournalBytes;
+    private final int maxJournalRecords;
+    private final long maxIntervalMillis;
+    private final long checkIntervalMillis;
+    private ScheduledExecutorService scheduler;
+    private volatile long lastCompactionMillis = System.currentTimeMillis();
+
+    public RecipeCompactor(RecipeJournal journal, Task task, long maxJournalBytes, int maxJournalRecords,
+                           long maxIntervalMillis, long checkIntervalMillis) {
+        this.journal = journal;
+        this.task = task;
+        this.maxJournalBytes = maxJournalBytes;
+        this.maxJournalRecords = maxJournalRecords;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recipe-compactor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::compactIfNeeded, checkIntervalMillis, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    public boolean isCompactionDue() {
+        int records = journal.recordCount();
+        if (records == 0) {
+            return false;
+        }
+        return journal.size() >= maxJournalBytes
+                || records >= maxJournalRecords
+                || System.currentTimeMillis() - lastCompactionMillis >= maxIntervalMillis;
+    }
+
+    private void compactIfNeeded() {
+        try {
+            if (isCompactionDue()) {
+                long start = System.currentTimeMillis();
+                task.compact();
+                lastCompactionMillis = System.currentTimeMillis();
+                System.out.println("Recipe journal compacted in " + (lastCompactionMillis - start) + " ms");
+            }
+        } catch (Exception e) {
+            // Keep the schedule alive; the journal still holds every change
+            e.printStackTrace();
+        }
+    }
+}
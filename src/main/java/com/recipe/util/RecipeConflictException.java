@@ -0,0 +1,34 @@
+package com.recipe.util;
+
+/**
+ * Thrown when a save was based on a version of the recipe that is no longer current:
+ * someone else committed a change to it (or deleted it) in the meantime.
+ */
+public class RecipeConflictException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final String recipeId;
+    private final long expectedVersion;
+    private final long currentVersion;
+
+    public RecipeConflictException(String recipeId, long expectedVersion, long currentVersion) {
+        super("Recipe " + recipeId + " was changed by someone else (edited version " + expectedVersion
+                + (currentVersion < 0 ? ", recipe since deleted)" : ", current version " + currentVersion + ")"));
+        this.recipeId = recipeId;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    public String getRecipeId() {
+        return recipeId;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    // -1 if the recipe no longer exists
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,12 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+
+/**
+ * A read-modify-write change to one recipe, run on the caller's thread while the recipe's
+ * edit lock is held.
+ */
+public interface RecipeEditor {
+    // Called with a private copy of the current recipe; may run more than once
+    void edit(Recipe recipe) throws Exception;
+}
@@ -0,0 +1,268 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of recipe mutations. Every save or delete becomes one
+ * framed record ({@code length, crc32, op, payload}) appended to the end of the file,
+ * so the cost of a write depends on the size of the change rather than the catalog.
+ * Records are appended in batches handed over by {@link RecipeCommitQueue}, with one
+ * fsync per batch.
+ *
+ * <p>The log is split into numbered segments ({@code recipes.journal.<generation>}).
+ * Compaction rolls to a new segment, writes a snapshot that covers every older one
+ * and then deletes them, which keeps replay time and disk use bounded.
+ */
+public class RecipeJournal implements Closeable {
+    private static final byte OP_SAVE = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int HEADER_SIZE = 9;
+
+    private final File directory;
+    private final String baseName;
+    private long generation;
+    private FileChannel channel;
+    private int recordCount;
+    private long byteCount;
+
+    public RecipeJournal(File directory, String baseName) {
+        this.directory = directory;
+        this.baseName = baseName;
+    }
+
+    private File segmentFile(long segmentGeneration) {
+        return new File(directory, baseName + "." + segmentGeneration);
+    }
+
+    // Generations of the segments on disk, oldest first
+    private List<Long> listGenerations() {
+        List<Long> generations = new ArrayList<>();
+        String prefix = baseName + ".";
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix)) {
+                    try {
+                        generations.add(Long.parseLong(name.substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        // not a segment (e.g. a temp file)
+                    }
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Applies every intact record from segments at or after {@code fromGeneration} to the
+     * given callbacks in log order. Segments older than that are already folded into the
+     * snapshot and are removed. A torn or corrupt tail left by a crash is cut off so that
+     * new records are appended after the last good one. Must be called before {@link #open()}.
+     */
+    public synchronized int replay(long fromGeneration, Consumer<Recipe> onSave, Consumer<String> onDelete)
+            throws IOException {
+        // A journal written before segmentation counts as generation 0
+        File legacy = new File(directory, baseName);
+        if (legacy.exists() && !segmentFile(0).exists()) {
+            Files.move(legacy.toPath(), segmentFile(0).toPath());
+        }
+
+        generation = fromGeneration;
+        recordCount = 0;
+        byteCount = 0;
+        int replayed = 0;
+        for (long segmentGeneration : listGenerations()) {
+            if (segmentGeneration < fromGeneration) {
+                Files.deleteIfExists(segmentFile(segmentGeneration).toPath());
+                continue;
+            }
+            replayed += replaySegment(segmentFile(segmentGeneration), onSave, onDelete);
+            byteCount += segmentFile(segmentGeneration).length();
+            generation = segmentGeneration;
+        }
+        recordCount = replayed;
+        return replayed;
+    }
+
+    private int replaySegment(File file, Consumer<Recipe> onSave, Consumer<String> onDelete) throws IOException {
+        long validLength = 0;
+        long fileLength = file.length();
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                // A length the rest of the segment cannot hold is a torn or corrupt header
+                if (length < 0 || length > fileLength - validLength - HEADER_SIZE) {
+                    break;
+                }
+                int crc;
+                byte op;
+                byte[] payload = new byte[length];
+                try {
+                    crc = in.readInt();
+                    op = in.readByte();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc != checksum(op, payload)) {
+                    break;
+                }
+
+                if (op == OP_SAVE) {
+                    onSave.accept(RecipeRecordCodec.decode(payload));
+                } else if (op == OP_DELETE) {
+                    onDelete.accept(new String(payload, StandardCharsets.UTF_8));
+                } else {
+                    break;
+                }
+                validLength += HEADER_SIZE + length;
+                replayed++;
+            }
+        }
+
+        if (validLength < fileLength) {
+            System.err.println("Truncating damaged recipe journal tail of " + file.getName()
+                    + " at offset " + validLength);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return replayed;
+    }
+
+    public synchronized void open() throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(segmentFile(generation).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Seals the active segment and starts a new, empty one. Returns the new generation;
+     * a snapshot taken together with the roll covers every segment before it.
+     */
+    public synchronized long roll() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        generation++;
+        openSegment();
+        recordCount = 0;
+        byteCount = 0;
+        return generation;
+    }
+
+    public synchronized void deleteSegmentsBefore(long keepGeneration) throws IOException {
+        for (long segmentGeneration : listGenerations()) {
+            if (segmentGeneration < keepGeneration) {
+                Files.deleteIfExists(segmentFile(segmentGeneration).toPath());
+            }
+        }
+    }
+
+    /**
+     * Appends one record per mutation with a single write and forces them to disk before
+     * returning, so the whole batch becomes durable at once. If the write fails the
+     * segment is cut back to where the batch started.
+     */
+    public synchronized void append(List<RecipeMutation> mutations) throws IOException {
+        if (channel == null) {
+            throw new IOException("Recipe journal is not open: " + segmentFile(generation).getAbsolutePath());
+        }
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(512 * mutations.size());
+        DataOutputStream out = new DataOutputStream(frames);
+        for (RecipeMutation mutation : mutations) {
+            byte op;
+            byte[] payload;
+            if (mutation.getType() == RecipeMutation.Type.SAVE) {
+                op = OP_SAVE;
+                payload = RecipeRecordCodec.encode(mutation.getRecipe());
+            } else {
+                op = OP_DELETE;
+                payload = mutation.getRecipeId().getBytes(StandardCharsets.UTF_8);
+            }
+            out.writeInt(payload.length);
+            out.writeInt(checksum(op, payload));
+            out.writeByte(op);
+            out.write(payload);
+        }
+
+        long start = channel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(frames.toByteArray());
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        recordCount += mutations.size();
+        byteCount += frames.size();
+    }
+
+    // Bytes and records logged since the last snapshot
+    public synchronized long size() {
+        return byteCount;
+    }
+
+    public synchronized int recordCount() {
+        return recordCount;
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static int checksum(byte op, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,85 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+import java.util.function.Consumer;
+
+/**
+ * A single save, delete or in-place update travelling through the commit queue into the
+ * journal. Saves carry their own copy of the recipe so the caller may keep modifying
+ * theirs. An update carries a change that the commit writer applies to the recipe as
+ * it stands at commit time, and is journaled as the resulting save.
+ *
+ * <p>A save is conditional: it commits only if the recipe is still at the version the
+ * saved copy carries. Updates never conflict, since they are applied to the current
+ * version; a merge is an update to server-maintained data such as rating tallies,
+ * which leaves the version alone so it does not invalidate edits in progress.
+ */
+public class RecipeMutation {
+    public enum Type { SAVE, DELETE, UPDATE }
+
+    private final Type type;
+    private final String recipeId;
+    private final Recipe recipe;
+    private final Consumer<Recipe> change;
+    private final boolean merge;
+    private Exception rejection;
+
+    private RecipeMutation(Type type, String recipeId, Recipe recipe, Consumer<Recipe> change, boolean merge) {
+        this.type = type;
+        this.recipeId = recipeId;
+        this.recipe = recipe;
+        this.change = change;
+        this.merge = merge;
+    }
+
+    public static RecipeMutation save(Recipe recipe) {
+        Recipe copy = recipe.copy();
+        AttributeDictionary.internAttributes(copy);
+        return new RecipeMutation(Type.SAVE, recipe.getId(), copy, null, false);
+    }
+
+    public static RecipeMutation delete(String recipeId) {
+        return new RecipeMutation(Type.DELETE, recipeId, null, null, false);
+    }
+
+    // The change runs on the commit writer thread and must be quick and side-effect free
+    public static RecipeMutation update(String recipeId, Consumer<Recipe> change) {
+        return new RecipeMutation(Type.UPDATE, recipeId, null, change, false);
+    }
+
+    // An update that does not count as an edit of the recipe
+    public static RecipeMutation merge(String recipeId, Consumer<Recipe> change) {
+        return new RecipeMutation(Type.UPDATE, recipeId, null, change, true);
+    }
+
+    // Applies an update to a private copy of the current recipe and returns it as a save
+    RecipeMutation resolve(Recipe current) {
+        Recipe updated = current.copy();
+        change.accept(updated);
+        AttributeDictionary.internAttributes(updated);
+        updated.setId(recipeId);
+        updated.setVersion(merge ? current.getVersion() : current.getVersion() + 1);
+        return new RecipeMutation(Type.SAVE, recipeId, updated, null, false);
+    }
+
+    // Set by the commit writer when the mutation is dropped from its batch
+    void reject(Exception reason) {
+        this.rejection = reason;
+    }
+
+    Exception getRejection() {
+        return rejection;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getRecipeId() {
+        return recipeId;
+    }
+
+    public Recipe getRecipe() {
+        return recipe;
+    }
+}
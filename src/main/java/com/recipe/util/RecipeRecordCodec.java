@@ -0,0 +1,307 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a single recipe, used for journal records. Strings are
+ * written as a UTF-8 byte count followed by the bytes, with -1 marking null.
+ *
+ * <p>Decoding reads the scalar fields and only notes where each collection starts;
+ * the collections are decoded from the record when first read (see {@link LazyRecipe}),
+ * and re-encoding a recipe copies the bytes of those never decoded.
+ */
+public class RecipeRecordCodec {
+    // A recipe over its record: offsets of ingredients, steps, tags, reviews and the end
+    private static class Record extends LazyRecipe {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] data;
+        private final int[] sections;
+
+        Record(byte[] data, int[] sections) {
+            this.data = data;
+            this.sections = sections;
+        }
+
+        Record(Record other) {
+            super(other);
+            this.data = other.data;
+            this.sections = other.sections;
+        }
+
+        @Override
+        public Record copy() {
+            return new Record(this);
+        }
+
+        private DataInputStream section(int index) {
+            return new DataInputStream(new ByteArrayInputStream(data, sections[index],
+                    sections[index + 1] - sections[index]));
+        }
+
+        // The encoded bytes of a collection that was never decoded, else null
+        byte[] encoded(int collection, int index) {
+            return isEncoded(collection) ? Arrays.copyOfRange(data, sections[index], sections[index + 1]) : null;
+        }
+
+        @Override
+        protected List<Ingredient> decodeIngredients() throws IOException {
+            return readIngredients(section(0));
+        }
+
+        @Override
+        protected List<String> decodePreparationSteps() throws IOException {
+            return readStrings(section(1));
+        }
+
+        @Override
+        protected List<String> decodeTags() throws IOException {
+            List<String> tags = readStrings(section(2));
+            tags.replaceAll(AttributeDictionary.TAGS::intern);
+            return tags;
+        }
+
+        @Override
+        protected List<Review> decodeReviews() throws IOException {
+            return readReviews(section(3), getId());
+        }
+    }
+
+    // Version 1 stored the average rating instead of the rating sum and histogram;
+    // version 2 had no recipe version
+    private static final byte FORMAT_VERSION = 3;
+
+    public static byte[] encode(Recipe recipe) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, recipe.getId());
+        writeString(out, recipe.getTitle());
+        writeString(out, recipe.getDescription());
+        writeString(out, recipe.getCuisineType());
+        writeString(out, recipe.getDifficultyLevel());
+        out.writeInt(recipe.getPreparationTime());
+        out.writeInt(recipe.getCookingTime());
+        out.writeInt(recipe.getServings());
+        writeString(out, recipe.getCategory());
+        writeString(out, recipe.getPhotoPath());
+        writeString(out, recipe.getUserId());
+        writeString(out, recipe.getAuthorName());
+        out.writeInt(recipe.getTotalRatings());
+        out.writeLong(recipe.getRatingSum());
+        for (int votes : recipe.getRatingHistogram()) {
+            out.writeInt(votes);
+        }
+        out.writeBoolean(recipe.isApproved());
+        writeString(out, recipe.getCreatedAt());
+        out.writeLong(recipe.getVersion());
+
+        Record record = recipe instanceof Record ? (Record) recipe : null;
+        byte[] raw = record != null ? record.encoded(LazyRecipe.INGREDIENTS, 0) : null;
+        if (raw != null) {
+            out.write(raw);
+        } else {
+            out.writeInt(recipe.getIngredients().size());
+            for (Ingredient ingredient : recipe.getIngredients()) {
+                writeString(out, ingredient.getName());
+                out.writeDouble(ingredient.getQuantity());
+                writeString(out, ingredient.getUnit());
+                writeString(out, ingredient.getNotes());
+            }
+        }
+
+        raw = record != null ? record.encoded(LazyRecipe.STEPS, 1) : null;
+        if (raw != null) {
+            out.write(raw);
+        } else {
+            writeStrings(out, recipe.getPreparationSteps());
+        }
+
+        raw = record != null ? record.encoded(LazyRecipe.TAGS, 2) : null;
+        if (raw != null) {
+            out.write(raw);
+        } else {
+            writeStrings(out, recipe.getTags());
+        }
+
+        raw = record != null ? record.encoded(LazyRecipe.REVIEWS, 3) : null;
+        if (raw != null) {
+            out.write(raw);
+        } else {
+            out.writeInt(recipe.getReviews().size());
+            for (Review review : recipe.getReviews()) {
+                writeString(out, review.getId());
+                writeString(out, review.getUserId());
+                writeString(out, review.getUsername());
+                out.writeInt(review.getRating());
+                writeString(out, review.getComment());
+                writeString(out, review.getCreatedAt());
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static Recipe decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported recipe record version: " + version);
+        }
+
+        // Collections are located now, so a damaged record still fails here, and decoded later
+        int[] sections = new int[5];
+        Record recipe = new Record(data, sections);
+        recipe.setId(readString(in));
+        recipe.setTitle(readString(in));
+        recipe.setDescription(readString(in));
+        recipe.setCuisineType(AttributeDictionary.CUISINES.intern(readString(in)));
+        recipe.setDifficultyLevel(AttributeDictionary.DIFFICULTIES.intern(readString(in)));
+        recipe.setPreparationTime(in.readInt());
+        recipe.setCookingTime(in.readInt());
+        recipe.setServings(in.readInt());
+        recipe.setCategory(AttributeDictionary.CATEGORIES.intern(readString(in)));
+        recipe.setPhotoPath(readString(in));
+        recipe.setUserId(readString(in));
+        recipe.setAuthorName(readString(in));
+        if (version == 1) {
+            double averageRating = in.readDouble();
+            recipe.setTotalRatings(in.readInt());
+            recipe.setAverageRating(averageRating);
+        } else {
+            recipe.setTotalRatings(in.readInt());
+            recipe.setRatingSum(in.readLong());
+            int[] histogram = new int[5];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = in.readInt();
+            }
+            recipe.setRatingHistogram(histogram);
+        }
+        recipe.setApproved(in.readBoolean());
+        recipe.setCreatedAt(readString(in));
+        if (version >= 3) {
+            recipe.setVersion(in.readLong());
+        }
+
+        sections[0] = data.length - in.available();
+        int ingredientCount = in.readInt();
+        for (int i = 0; i < ingredientCount; i++) {
+            skipString(in);
+            skipFully(in, 8);
+            skipString(in);
+            skipString(in);
+        }
+        sections[1] = data.length - in.available();
+        skipStrings(in, in.readInt());
+        sections[2] = data.length - in.available();
+        skipStrings(in, in.readInt());
+        sections[3] = data.length - in.available();
+        int reviewCount = in.readInt();
+        for (int i = 0; i < reviewCount; i++) {
+            skipStrings(in, 3);
+            skipFully(in, 4);
+            skipStrings(in, 2);
+        }
+        sections[4] = data.length - in.available();
+        return recipe;
+    }
+
+    private static List<Ingredient> readIngredients(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Ingredient> ingredients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Ingredient ingredient = new Ingredient();
+            ingredient.setName(readString(in));
+            ingredient.setQuantity(in.readDouble());
+            ingredient.setUnit(AttributeDictionary.UNITS.intern(readString(in)));
+            ingredient.setNotes(readString(in));
+            ingredients.add(ingredient);
+        }
+        return ingredients;
+    }
+
+    private static List<Review> readReviews(DataInputStream in, String recipeId) throws IOException {
+        int count = in.readInt();
+        List<Review> reviews = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Review review = new Review();
+            review.setId(readString(in));
+            review.setRecipeId(recipeId);
+            review.setUserId(readString(in));
+            review.setUsername(readString(in));
+            review.setRating(in.readInt());
+            review.setComment(readString(in));
+            review.setCreatedAt(readString(in));
+            reviews.add(review);
+        }
+        return reviews;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void skipStrings(DataInputStream in, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            skipString(in);
+        }
+    }
+
+    private static void skipString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length > 0) {
+            skipFully(in, length);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        if (in.skipBytes(length) != length) {
+            throw new EOFException("Truncated recipe record");
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
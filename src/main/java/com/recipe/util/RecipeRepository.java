@@ -0,0 +1,119 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resident copy of the recipe catalog. Lookups by id go straight to a hash map and
+ * the full listing is served from a cached, unmodifiable snapshot that is rebuilt
+ * lazily after a mutation, so reads never touch the disk. A {@link RecipeSummary} is
+ * built once per write for list pages, which never need the full record.
+ */
+public class RecipeRepository {
+    private final Map<String, Recipe> recipesById = new ConcurrentHashMap<>();
+    private final Map<String, RecipeSummary> summariesById = new ConcurrentHashMap<>();
+    // Keeps document order for listings; guarded by lock
+    private final Map<String, Recipe> orderedRecipes = new LinkedHashMap<>();
+    private final Object lock = new Object();
+    private volatile List<Recipe> snapshot = Collections.emptyList();
+    private volatile List<RecipeSummary> summarySnapshot = Collections.emptyList();
+
+    public void loadAll(Collection<Recipe> recipes) {
+        synchronized (lock) {
+            recipesById.clear();
+            summariesById.clear();
+            orderedRecipes.clear();
+            for (Recipe recipe : recipes) {
+                recipesById.put(recipe.getId(), recipe);
+                summariesById.put(recipe.getId(), new RecipeSummary(recipe));
+                orderedRecipes.put(recipe.getId(), recipe);
+            }
+            snapshot = null;
+            summarySnapshot = null;
+        }
+    }
+
+    // The returned recipes are shared with the repository and must be treated as read-only
+    public List<Recipe> findAll() {
+        List<Recipe> current = snapshot;
+        if (current == null) {
+            synchronized (lock) {
+                if (snapshot == null) {
+                    snapshot = Collections.unmodifiableList(new ArrayList<>(orderedRecipes.values()));
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    // Summaries of every recipe in document order
+    public List<RecipeSummary> findAllSummaries() {
+        List<RecipeSummary> current = summarySnapshot;
+        if (current == null) {
+            synchronized (lock) {
+                if (summarySnapshot == null) {
+                    List<RecipeSummary> summaries = new ArrayList<>(orderedRecipes.size());
+                    for (String id : orderedRecipes.keySet()) {
+                        summaries.add(summariesById.get(id));
+                    }
+                    summarySnapshot = Collections.unmodifiableList(summaries);
+                }
+                current = summarySnapshot;
+            }
+        }
+        return current;
+    }
+
+    public RecipeSummary findSummary(String id) {
+        return id != null ? summariesById.get(id) : null;
+    }
+
+    // Returns a private copy so callers can modify it before handing it back to put()
+    public Recipe findById(String id) {
+        if (id == null) {
+            return null;
+        }
+        Recipe recipe = recipesById.get(id);
+        return recipe != null ? recipe.copy() : null;
+    }
+
+    public boolean contains(String id) {
+        return id != null && recipesById.containsKey(id);
+    }
+
+    public int size() {
+        return recipesById.size();
+    }
+
+    // Takes ownership of the given instance; callers hand in a copy they no longer modify
+    public Recipe put(Recipe recipe) {
+        synchronized (lock) {
+            orderedRecipes.put(recipe.getId(), recipe);
+            summariesById.put(recipe.getId(), new RecipeSummary(recipe));
+            snapshot = null;
+            summarySnapshot = null;
+            return recipesById.put(recipe.getId(), recipe);
+        }
+    }
+
+    public Recipe remove(String id) {
+        synchronized (lock) {
+            Recipe removed = recipesById.remove(id);
+            if (removed != null) {
+                orderedRecipes.remove(id);
+                summariesById.remove(id);
+                snapshot = null;
+                summarySnapshot = null;
+            }
+            return removed;
+        }
+    }
+}
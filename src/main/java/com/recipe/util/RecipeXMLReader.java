@@ -0,0 +1,290 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming (StAX) reader for the recipes.xml layout. Each recipe is built in a single
+ * forward pass and handed to the sink as soon as its closing tag is seen, so only the
+ * recipe currently being read is held besides what the sink keeps.
+ */
+public class RecipeXMLReader {
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Streams every recipe to the sink and returns the journal generation recorded on the
+     * root element, i.e. the first journal segment not yet folded into this snapshot
+     * (0 for files written before compaction existed).
+     */
+    public static long read(InputStream in, Consumer<Recipe> sink) throws XMLStreamException {
+        long journalGeneration = 0;
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("recipe".equals(reader.getLocalName())) {
+                    sink.accept(readRecipe(reader));
+                } else if ("recipes".equals(reader.getLocalName())) {
+                    String generation = reader.getAttributeValue(null, "journalGeneration");
+                    if (generation != null && !generation.isEmpty()) {
+                        journalGeneration = Long.parseLong(generation.trim());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return journalGeneration;
+    }
+
+    private static Recipe readRecipe(XMLStreamReader reader) throws XMLStreamException {
+        Recipe recipe = new Recipe();
+        recipe.setId(attribute(reader, "id"));
+        recipe.setServings(1);
+        Double legacyAverage = null;
+        boolean hasRatingSum = false;
+
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "title":
+                    recipe.setTitle(reader.getElementText());
+                    break;
+                case "description":
+                    recipe.setDescription(reader.getElementText());
+                    break;
+                case "cuisineType":
+                    recipe.setCuisineType(reader.getElementText());
+                    break;
+                case "difficultyLevel":
+                    recipe.setDifficultyLevel(reader.getElementText());
+                    break;
+                case "preparationTime":
+                    recipe.setPreparationTime(parseInt(reader.getElementText(), 0));
+                    break;
+                case "cookingTime":
+                    recipe.setCookingTime(parseInt(reader.getElementText(), 0));
+                    break;
+                case "servings":
+                    recipe.setServings(parseInt(reader.getElementText(), 1));
+                    break;
+                case "category":
+                    recipe.setCategory(reader.getElementText());
+                    break;
+                case "photoPath":
+                    recipe.setPhotoPath(reader.getElementText());
+                    break;
+                case "userId":
+                    recipe.setUserId(reader.getElementText());
+                    break;
+                case "authorName":
+                    recipe.setAuthorName(reader.getElementText());
+                    break;
+                case "averageRating":
+                    legacyAverage = parseDouble(reader.getElementText(), 0.0);
+                    break;
+                case "totalRatings":
+                    recipe.setTotalRatings(parseInt(reader.getElementText(), 0));
+                    break;
+                case "ratingSum":
+                    recipe.setRatingSum(parseLong(reader.getElementText(), 0L));
+                    hasRatingSum = true;
+                    break;
+                case "ratingHistogram":
+                    recipe.setRatingHistogram(parseHistogram(reader.getElementText()));
+                    break;
+                case "approved":
+                    recipe.setApproved(Boolean.parseBoolean(reader.getElementText().trim()));
+                    break;
+                case "createdAt":
+                    recipe.setCreatedAt(reader.getElementText());
+                    break;
+                case "version":
+                    recipe.setVersion(parseLong(reader.getElementText(), 0L));
+                    break;
+                case "ingredients":
+                    while (nextChild(reader)) {
+                        if ("ingredient".equals(reader.getLocalName())) {
+                            recipe.getIngredients().add(readIngredient(reader));
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                    break;
+                case "preparationSteps":
+                    readTextList(reader, "step", recipe.getPreparationSteps());
+                    break;
+                case "tags":
+                    readTextList(reader, "tag", recipe.getTags());
+                    break;
+                case "reviews":
+                    while (nextChild(reader)) {
+                        if ("review".equals(reader.getLocalName())) {
+                            recipe.getReviews().add(readReview(reader, recipe.getId()));
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                    break;
+                default:
+                    skipElement(reader);
+                    break;
+            }
+        }
+
+        // Snapshots written before ratings were counted only carry the average
+        if (!hasRatingSum && legacyAverage != null) {
+            recipe.setAverageRating(legacyAverage);
+        }
+
+        // Fields missing from the record default to "" just like the DOM parser did
+        if (recipe.getTitle() == null) recipe.setTitle("");
+        if (recipe.getDescription() == null) recipe.setDescription("");
+        if (recipe.getCuisineType() == null) recipe.setCuisineType("");
+        if (recipe.getDifficultyLevel() == null) recipe.setDifficultyLevel("");
+        if (recipe.getCategory() == null) recipe.setCategory("");
+        if (recipe.getPhotoPath() == null) recipe.setPhotoPath("");
+        if (recipe.getUserId() == null) recipe.setUserId("");
+        if (recipe.getAuthorName() == null) recipe.setAuthorName("");
+        if (recipe.getCreatedAt() == null) recipe.setCreatedAt("");
+        AttributeDictionary.internAttributes(recipe);
+        return recipe;
+    }
+
+    private static Ingredient readIngredient(XMLStreamReader reader) throws XMLStreamException {
+        Ingredient ingredient = new Ingredient("", 0, "", "");
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "name":
+                    ingredient.setName(reader.getElementText());
+                    break;
+                case "quantity":
+                    ingredient.setQuantity(parseDouble(reader.getElementText(), 0));
+                    break;
+                case "unit":
+                    ingredient.setUnit(reader.getElementText());
+                    break;
+                case "notes":
+                    ingredient.setNotes(reader.getElementText());
+                    break;
+                default:
+                    skipElement(reader);
+                    break;
+            }
+        }
+        return ingredient;
+    }
+
+    private static Review readReview(XMLStreamReader reader, String recipeId) throws XMLStreamException {
+        Review review = new Review();
+        review.setId(attribute(reader, "id"));
+        review.setRecipeId(recipeId);
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "userId":
+                    review.setUserId(reader.getElementText());
+                    break;
+                case "username":
+                    review.setUsername(reader.getElementText());
+                    break;
+                case "rating":
+                    review.setRating(parseInt(reader.getElementText(), 0));
+                    break;
+                case "comment":
+                    review.setComment(reader.getElementText());
+                    break;
+                case "createdAt":
+                    review.setCreatedAt(reader.getElementText());
+                    break;
+                default:
+                    skipElement(reader);
+                    break;
+            }
+        }
+        return review;
+    }
+
+    private static void readTextList(XMLStreamReader reader, String itemName, List<String> target)
+            throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (itemName.equals(reader.getLocalName())) {
+                target.add(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    // Advances to the next child start tag; returns false once the parent's end tag is reached
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : "";
+    }
+
+    private static int parseInt(String text, int defaultValue) {
+        String value = text.trim();
+        return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static long parseLong(String text, long defaultValue) {
+        String value = text.trim();
+        return value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
+
+    private static double parseDouble(String text, double defaultValue) {
+        String value = text.trim();
+        return value.isEmpty() ? defaultValue : Double.parseDouble(value);
+    }
+
+    // Comma-separated vote counts for 1..5 stars
+    private static int[] parseHistogram(String text) {
+        int[] histogram = new int[5];
+        String[] counts = text.trim().split(",");
+        for (int i = 0; i < counts.length && i < histogram.length; i++) {
+            histogram[i] = parseInt(counts[i], 0);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,142 @@
+package com.recipe.util;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+
+/**
+ * Streaming (StAX) writer for the recipes.xml layout, counterpart of {@link RecipeXMLReader}.
+ * Recipes are written one after another without building a DOM, so writing a snapshot
+ * needs no memory beyond the recipes themselves.
+ */
+public class RecipeXMLWriter {
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    public static void write(OutputStream out, Iterable<Recipe> recipes, long journalGeneration)
+            throws XMLStreamException {
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement("recipes");
+        writer.writeAttribute("journalGeneration", String.valueOf(journalGeneration));
+        for (Recipe recipe : recipes) {
+            writeRecipe(writer, LazyRecipe.detached(recipe));
+        }
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
+    private static void writeRecipe(XMLStreamWriter writer, Recipe recipe) throws XMLStreamException {
+        indent(writer, 1);
+        writer.writeStartElement("recipe");
+        writer.writeAttribute("id", recipe.getId());
+
+        writeText(writer, 2, "title", recipe.getTitle());
+        writeText(writer, 2, "description", recipe.getDescription());
+        writeText(writer, 2, "cuisineType", recipe.getCuisineType());
+        writeText(writer, 2, "difficultyLevel", recipe.getDifficultyLevel());
+        writeText(writer, 2, "preparationTime", String.valueOf(recipe.getPreparationTime()));
+        writeText(writer, 2, "cookingTime", String.valueOf(recipe.getCookingTime()));
+        writeText(writer, 2, "servings", String.valueOf(recipe.getServings()));
+        writeText(writer, 2, "category", recipe.getCategory());
+        writeText(writer, 2, "photoPath", recipe.getPhotoPath());
+        writeText(writer, 2, "userId", recipe.getUserId());
+        writeText(writer, 2, "authorName", recipe.getAuthorName());
+        writeText(writer, 2, "averageRating", String.valueOf(recipe.getAverageRating()));
+        writeText(writer, 2, "totalRatings", String.valueOf(recipe.getTotalRatings()));
+        writeText(writer, 2, "ratingSum", String.valueOf(recipe.getRatingSum()));
+        writeText(writer, 2, "ratingHistogram", joinHistogram(recipe.getRatingHistogram()));
+        writeText(writer, 2, "approved", String.valueOf(recipe.isApproved()));
+        writeText(writer, 2, "createdAt", recipe.getCreatedAt());
+        writeText(writer, 2, "version", String.valueOf(recipe.getVersion()));
+
+        indent(writer, 2);
+        writer.writeStartElement("ingredients");
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            indent(writer, 3);
+            writer.writeStartElement("ingredient");
+            writeText(writer, 4, "name", ingredient.getName());
+            writeText(writer, 4, "quantity", String.valueOf(ingredient.getQuantity()));
+            writeText(writer, 4, "unit", ingredient.getUnit());
+            // Missing notes read back as empty, so either way nothing is written
+            if (ingredient.getNotes() != null && !ingredient.getNotes().isEmpty()) {
+                writeText(writer, 4, "notes", ingredient.getNotes());
+            }
+            indent(writer, 3);
+            writer.writeEndElement();
+        }
+        endContainer(writer, 2, !recipe.getIngredients().isEmpty());
+
+        indent(writer, 2);
+        writer.writeStartElement("preparationSteps");
+        for (String step : recipe.getPreparationSteps()) {
+            writeText(writer, 3, "step", step);
+        }
+        endContainer(writer, 2, !recipe.getPreparationSteps().isEmpty());
+
+        indent(writer, 2);
+        writer.writeStartElement("tags");
+        for (String tag : recipe.getTags()) {
+            writeText(writer, 3, "tag", tag);
+        }
+        endContainer(writer, 2, !recipe.getTags().isEmpty());
+
+        indent(writer, 2);
+        writer.writeStartElement("reviews");
+        for (Review review : recipe.getReviews()) {
+            indent(writer, 3);
+            writer.writeStartElement("review");
+            writer.writeAttribute("id", review.getId() != null ? review.getId() : "");
+            writeText(writer, 4, "userId", review.getUserId());
+            writeText(writer, 4, "username", review.getUsername());
+            writeText(writer, 4, "rating", String.valueOf(review.getRating()));
+            writeText(writer, 4, "comment", review.getComment());
+            writeText(writer, 4, "createdAt", review.getCreatedAt());
+            indent(writer, 3);
+            writer.writeEndElement();
+        }
+        endContainer(writer, 2, !recipe.getReviews().isEmpty());
+
+        indent(writer, 1);
+        writer.writeEndElement();
+    }
+
+    private static void writeText(XMLStreamWriter writer, int depth, String name, String value)
+            throws XMLStreamException {
+        indent(writer, depth);
+        writer.writeStartElement(name);
+        writer.writeCharacters(value != null ? value : "");
+        writer.writeEndElement();
+    }
+
+    private static String joinHistogram(int[] histogram) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(histogram[i]);
+        }
+        return text.toString();
+    }
+
+    private static void endContainer(XMLStreamWriter writer, int depth, boolean hasChildren)
+            throws XMLStreamException {
+        if (hasChildren) {
+            indent(writer, depth);
+        }
+        writer.writeEndElement();
+    }
+
+    private static void indent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        writer.writeCharacters("\n" + "  ".repeat(depth));
+    }
+}
@@ -0,0 +1,290 @@
+package com.recipe.util;
+
+import com.recipe.model.Recipe;
+import com.recipe.model.Review;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Reviews, stored apart from the recipe records in an append-only log
+ * ({@code data/reviews.log}). Only the file offset of each review is kept in memory,
+ * grouped by recipe in the order the reviews were written; a page of reviews is decoded
+ * from the log on demand. Loading or listing recipes therefore never reads review data.
+ *
+ * <p>Reviews still embedded in recipe records from before this store existed are moved
+ * into it by the recipe store at startup, see {@link #importEmbeddedReviews}.
+ */
+public class ReviewManager {
+    private static final String LOG_FILE = "reviews.log";
+    private static final int HEADER_SIZE = 8;
+    private static final String FILE_PATH;
+    private static final Object WRITE_LOCK = new Object();
+
+    // recipe id -> offsets of its reviews, oldest first
+    private static final Map<String, Offsets> offsetsByRecipe = new ConcurrentHashMap<>();
+    private static FileChannel channel;
+    private static long endOfLog;
+
+    // Append-only list of file offsets; positions never change once written
+    private static class Offsets {
+        private long[] offsets = new long[4];
+        private int size;
+
+        synchronized void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long get(int position) {
+            return offsets[position];
+        }
+    }
+
+    static {
+        String dataDir = System.getProperty("recipe.data.dir",
+                System.getProperty("user.dir") + File.separator + "data");
+        FILE_PATH = dataDir + File.separator + LOG_FILE;
+        load();
+    }
+
+    private static void load() {
+        synchronized (WRITE_LOCK) {
+            try {
+                File file = new File(FILE_PATH);
+                if (file.exists()) {
+                    scan(file);
+                }
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                endOfLog = channel.size();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Indexes every intact record and cuts off a torn tail left by a crash
+    private static void scan(File file) throws IOException {
+        long validLength = 0;
+        long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                int crc;
+                try {
+                    int length = in.readInt();
+                    // A length the rest of the file cannot hold is a torn or corrupt header
+                    if (length < 0 || length > fileLength - validLength - HEADER_SIZE) {
+                        break;
+                    }
+                    crc = in.readInt();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc != checksum(payload)) {
+                    break;
+                }
+                Review review = decode(payload);
+                offsetsByRecipe.computeIfAbsent(review.getRecipeId(), id -> new Offsets()).add(validLength);
+                IdGenerator.observe(review.getId());
+                validLength += HEADER_SIZE + payload.length;
+            }
+        }
+        if (validLength < fileLength) {
+            System.err.println("Truncating damaged review log tail at offset " + validLength);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+    }
+
+    /**
+     * Appends the reviews still embedded in a recipe record from before this store existed,
+     * skipping any already logged by an earlier, interrupted run. The caller then clears
+     * them from the recipe. Returns the number of reviews moved.
+     */
+    public static int importEmbeddedReviews(Recipe recipe) throws IOException {
+        if (recipe.getReviews().isEmpty()) {
+            return 0;
+        }
+        int moved = 0;
+        synchronized (WRITE_LOCK) {
+            // Read back from the log for this import only; usually the recipe has none yet
+            Set<String> logged = new HashSet<>();
+            Offsets offsets = offsetsByRecipe.get(recipe.getId());
+            for (int position = 0; offsets != null && position < offsets.size(); position++) {
+                logged.add(read(offsets.get(position)).getId());
+            }
+            for (Review review : recipe.getReviews()) {
+                if (logged.add(review.getId())) {
+                    Review copy = new Review(review);
+                    copy.setRecipeId(recipe.getId());
+                    append(copy);
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+
+    public static void addReview(Review review) throws IOException {
+        if (review.getRecipeId() == null || review.getRecipeId().isEmpty()) {
+            throw new IllegalArgumentException("Review must belong to a recipe");
+        }
+        synchronized (WRITE_LOCK) {
+            append(review);
+        }
+    }
+
+    // Callers hold WRITE_LOCK
+    private static void append(Review review) throws IOException {
+        if (channel == null) {
+            throw new IOException("Review log is not open: " + FILE_PATH);
+        }
+        byte[] payload = encode(review);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        buffer.flip();
+
+        long offset = endOfLog;
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(offset);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        endOfLog = offset + HEADER_SIZE + payload.length;
+        offsetsByRecipe.computeIfAbsent(review.getRecipeId(), id -> new Offsets()).add(offset);
+    }
+
+    public static int countReviews(String recipeId) {
+        Offsets offsets = recipeId != null ? offsetsByRecipe.get(recipeId) : null;
+        return offsets != null ? offsets.size() : 0;
+    }
+
+    /**
+     * Returns up to {@code limit} reviews of the recipe, newest first, among those written
+     * before the given position (the position of a review is its index in write order).
+     * A negative {@code before} starts from the newest review.
+     */
+    public static List<Review> getReviews(String recipeId, int before, int limit) throws IOException {
+        List<Review> reviews = new ArrayList<>();
+        Offsets offsets = recipeId != null ? offsetsByRecipe.get(recipeId) : null;
+        if (offsets == null || limit <= 0) {
+            return reviews;
+        }
+        int end = offsets.size();
+        if (before >= 0 && before < end) {
+            end = before;
+        }
+        for (int position = end - 1; position >= 0 && reviews.size() < limit; position--) {
+            reviews.add(read(offsets.get(position)));
+        }
+        return reviews;
+    }
+
+    // Positional reads do not move the channel position, so they need no lock
+    private static Review read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, offset);
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + HEADER_SIZE);
+        if (crc != checksum(payload.array())) {
+            throw new IOException("Corrupt review record at offset " + offset);
+        }
+        return decode(payload.array());
+    }
+
+    private static void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Review record truncated at offset " + position);
+            }
+        }
+    }
+
+    public static void shutdown() {
+        synchronized (WRITE_LOCK) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static byte[] encode(Review review) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        RecipeRecordCodec.writeString(out, review.getRecipeId());
+        RecipeRecordCodec.writeString(out, review.getId());
+        RecipeRecordCodec.writeString(out, review.getUserId());
+        RecipeRecordCodec.writeString(out, review.getUsername());
+        out.writeInt(review.getRating());
+        RecipeRecordCodec.writeString(out, review.getComment());
+        RecipeRecordCodec.writeString(out, review.getCreatedAt());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Review decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Review review = new Review();
+        review.setRecipeId(RecipeRecordCodec.readString(in));
+        review.setId(RecipeRecordCodec.readString(in));
+        review.setUserId(RecipeRecordCodec.readString(in));
+        review.setUsername(RecipeRecordCodec.readString(in));
+        review.setRating(in.readInt());
+        review.setComment(RecipeRecordCodec.readString(in));
+        review.setCreatedAt(RecipeRecordCodec.readString(in));
+        return review;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,34 @@
+package com.recipe.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared out by key hash. Work on the same key is serialized while
+ * work on different keys almost always gets different locks and runs in parallel, without
+ * keeping a lock object per key.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    // The stripe count is rounded up to a power of two
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    public ReentrantLock lockFor(String key) {
+        int hash = key != null ? key.hashCode() : 0;
+        // Spread the high bits so keys differing only there do not share a stripe
+        hash ^= hash >>> 16;
+        return locks[hash & mask];
+    }
+
+    public int size() {
+        return locks.length;
+    }
+}
@@ -11,17 +11,39 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resident user store. users.xml is parsed once at startup; lookups by id, username and
+ * email are then answered from hash indexes, and every write is persisted through to
+ * disk (written to a temp file and renamed over users.xml) before the indexes change.
+ * Callers always get their own copy of a user.
+ */
 public class UserManager {
     private static final String USERS_FILE = "users.xml";
     private static final String FILE_PATH;
+    private static final Object WRITE_LOCK = new Object();
+
+    private static final Map<String, User> usersById = new ConcurrentHashMap<>();
+    private static final Map<String, String> idsByUsername = new ConcurrentHashMap<>();
+    private static final Map<String, String> idsByEmail = new ConcurrentHashMap<>();
+    // Document order of users.xml; guarded by WRITE_LOCK
+    private static final Map<String, User> orderedUsers = new LinkedHashMap<>();
 
     static {
-        String userDir = System.getProperty("user.dir");
-        FILE_PATH = userDir + File.separator + "data" + File.separator + USERS_FILE;
+        String dataDir = System.getProperty("recipe.data.dir",
+                System.getProperty("user.dir") + File.separator + "data");
+        FILE_PATH = dataDir + File.separator + USERS_FILE;
         initializeFile();
+        loadUsers();
         createDefaultAdmin();
     }
 
@@ -51,6 +73,29 @@ public class UserManager {
         saveDocument(doc, file);
     }
 
+    private static void loadUsers() {
+        synchronized (WRITE_LOCK) {
+            try {
+                File file = new File(FILE_PATH);
+                if (!file.exists()) {
+                    return;
+                }
+
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                DocumentBuilder builder = factory.newDocumentBuilder();
+                Document doc = builder.parse(file);
+
+                NodeList userNodes = doc.getElementsByTagName("user");
+                for (int i = 0; i < userNodes.getLength(); i++) {
+                    index(parseUser((Element) userNodes.item(i)));
+                }
+                System.out.println("Loaded " + usersById.size() + " users from " + FILE_PATH);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private static void createDefaultAdmin() {
         try {
             User admin = getUserByUsername("admin");
@@ -66,94 +111,115 @@ public class UserManager {
     }
 
     public static User getUserByUsername(String username) {
-        List<User> users = getAllUsers();
-        return users.stream()
-                .filter(u -> u.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        return username != null ? copyOf(idsByUsername.get(username)) : null;
     }
 
-    public static User getUserById(String id) {
-        List<User> users = getAllUsers();
-        return users.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+    public static User getUserByEmail(String email) {
+        return email != null ? copyOf(idsByEmail.get(normalizeEmail(email))) : null;
     }
 
-    public static List<User> getAllUsers() {
-        List<User> users = new ArrayList<>();
-        try {
-            File file = new File(FILE_PATH);
-            if (!file.exists()) {
-                return users;
-            }
+    public static User getUserById(String id) {
+        return copyOf(id);
+    }
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(file);
+    private static User copyOf(String id) {
+        if (id == null) {
+            return null;
+        }
+        User user = usersById.get(id);
+        return user != null ? new User(user) : null;
+    }
 
-            NodeList userNodes = doc.getElementsByTagName("user");
-            for (int i = 0; i < userNodes.getLength(); i++) {
-                Element userElement = (Element) userNodes.item(i);
-                User user = parseUser(userElement);
-                users.add(user);
+    public static List<User> getAllUsers() {
+        synchronized (WRITE_LOCK) {
+            List<User> users = new ArrayList<>(orderedUsers.size());
+            for (User user : orderedUsers.values()) {
+                users.add(new User(user));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return users;
         }
-        return users;
     }
 
+    public static int getUserCount() {
+        return usersById.size();
+    }
+
+    /**
+     * Inserts or replaces a user. A user without an id gets a generated one. Fails if the
+     * username belongs to a different user. users.xml is rewritten before the change
+     * becomes visible, so a failed write leaves the store unchanged.
+     */
     public static void saveUser(User user) throws Exception {
-        File file = new File(FILE_PATH);
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc;
+        synchronized (WRITE_LOCK) {
+            if (user.getId() == null || user.getId().isEmpty()) {
+                user.setId(generateUserId());
+            }
+            String owner = user.getUsername() != null ? idsByUsername.get(user.getUsername()) : null;
+            if (owner != null && !owner.equals(user.getId())) {
+                throw new IllegalStateException("Username already exists: " + user.getUsername());
+            }
+
+            User stored = new User(user);
+            Map<String, User> updated = new LinkedHashMap<>(orderedUsers);
+            updated.put(stored.getId(), stored);
+            writeUsers(updated.values());
 
-        if (file.exists()) {
-            doc = builder.parse(file);
-        } else {
-            doc = builder.newDocument();
-            Element root = doc.createElement("users");
-            doc.appendChild(root);
+            unindex(usersById.get(stored.getId()));
+            index(stored);
         }
+    }
 
-        Element root = doc.getDocumentElement();
-        Element userElement = findOrCreateUserElement(doc, root, user.getId());
+    // Callers hold WRITE_LOCK
+    private static void index(User user) {
+        IdGenerator.observe(user.getId());
+        usersById.put(user.getId(), user);
+        orderedUsers.put(user.getId(), user);
+        if (user.getUsername() != null) {
+            idsByUsername.put(user.getUsername(), user.getId());
+        }
+        if (user.getEmail() != null && !user.getEmail().isEmpty()) {
+            idsByEmail.put(normalizeEmail(user.getEmail()), user.getId());
+        }
+    }
 
-        updateUserElement(doc, userElement, user);
+    private static void unindex(User user) {
+        if (user == null) {
+            return;
+        }
+        if (user.getUsername() != null) {
+            idsByUsername.remove(user.getUsername(), user.getId());
+        }
+        if (user.getEmail() != null) {
+            idsByEmail.remove(normalizeEmail(user.getEmail()), user.getId());
+        }
+    }
 
-        saveDocument(doc, file);
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
     }
 
-    private static Element findOrCreateUserElement(Document doc, Element root, String id) {
-        if (id == null || id.isEmpty()) {
-            id = generateUserId();
-        }
+    private static void writeUsers(Collection<User> users) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document doc = builder.newDocument();
+        Element root = doc.createElement("users");
+        doc.appendChild(root);
 
-        NodeList users = root.getElementsByTagName("user");
-        for (int i = 0; i < users.getLength(); i++) {
-            Element user = (Element) users.item(i);
-            if (user.getAttribute("id").equals(id)) {
-                return user;
-            }
+        for (User user : users) {
+            Element userElement = doc.createElement("user");
+            root.appendChild(userElement);
+            updateUserElement(doc, userElement, user);
         }
 
-        Element newUser = doc.createElement("user");
-        newUser.setAttribute("id", id);
-        root.appendChild(newUser);
-        return newUser;
+        File file = new File(FILE_PATH);
+        File tempFile = new File(file.getParentFile(), USERS_FILE + ".tmp");
+        saveDocument(doc, tempFile);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
     }
 
     private static void updateUserElement(Document doc, Element userElement, User user) {
-        if (user.getId() == null || user.getId().isEmpty()) {
-            user.setId(userElement.getAttribute("id"));
-        } else {
-            userElement.setAttribute("id", user.getId());
-        }
-
-        clearElement(userElement);
+        userElement.setAttribute("id", user.getId());
 
         appendTextElement(doc, userElement, "username", user.getUsername());
         appendTextElement(doc, userElement, "email", user.getEmail());
@@ -226,24 +292,19 @@ public class UserManager {
         return "";
     }
 
-    private static void clearElement(Element element) {
-        NodeList children = element.getChildNodes();
-        for (int i = children.getLength() - 1; i >= 0; i--) {
-            element.removeChild(children.item(i));
-        }
-    }
-
     private static void saveDocument(Document doc, File file) throws Exception {
         TransformerFactory transformerFactory = TransformerFactory.newInstance();
         Transformer transformer = transformerFactory.newTransformer();
         transformer.setOutputProperty("indent", "yes");
         DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(new FileOutputStream(file));
-        transformer.transform(source, result);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            transformer.transform(source, new StreamResult(out));
+            out.getFD().sync();
+        }
     }
 
     private static String generateUserId() {
-        return "USER_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+        return IdGenerator.nextId("USER_");
     }
 }
 
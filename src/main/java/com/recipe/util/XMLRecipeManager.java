@@ -1,33 +1,66 @@
 package com.recipe.util;
 
 import com.recipe.model.Recipe;
-import com.recipe.model.Ingredient;
-import com.recipe.model.Review;
-import org.w3c.dom.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-// import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import com.recipe.model.RecipeSummary;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 // import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 // import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class XMLRecipeManager {
-    private static final String RECIPES_FILE = "recipes.xml";
+    private static final int MAX_EDIT_ATTEMPTS = 5;
     private static final String FILE_PATH;
+    private static final String BINARY_PATH;
+    // Snapshot layout written by compaction: "xml" (default) or "binary", which is also
+    // what the binary recipe store selects
+    private static final boolean BINARY_SNAPSHOT = "binary".equalsIgnoreCase(System.getProperty(
+            "recipe.catalog.format", System.getProperty("recipe.store", "xml")).trim());
+    private static final String DATA_DIR;
+    private static final RecipeRepository repository = new RecipeRepository();
+    private static final Object WRITE_LOCK = new Object();
+    private static final Object COMPACTION_LOCK = new Object();
+    // Serializes read-modify-write of the same recipe on request threads
+    private static final StripedLocks editLocks = new StripedLocks(Integer.getInteger("recipe.editLockStripes", 64));
+    private static RecipeJournal journal;
+    private static RecipeCompactor compactor;
+    private static RecipeCommitQueue commitQueue;
+    private static RatingAggregator ratings;
+    private static final List<RecipeChangeListener> listeners = new CopyOnWriteArrayList<>();
     // private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     static {
-        String userDir = System.getProperty("user.dir");
-        FILE_PATH = userDir + File.separator + "data" + File.separator + RECIPES_FILE;
+        String dataDir = System.getProperty("recipe.data.dir",
+                System.getProperty("user.dir") + File.separator + "data");
+        FILE_PATH = dataDir + File.separator + RecipeCatalogReader.RECIPES_FILE;
+        BINARY_PATH = dataDir + File.separator + RecipeCatalogReader.BINARY_FILE;
+        DATA_DIR = dataDir;
         initializeFile();
+        try {
+            loadCatalog();
+        } catch (Exception e) {
+            // Serving a partial catalog would let the next compaction make the loss permanent
+            throw new IllegalStateException("Could not load the recipe catalog from " + DATA_DIR, e);
+        }
+        startCompactor();
+        startRatingAggregator();
     }
 
     private static void initializeFile() {
@@ -37,325 +70,367 @@ public class XMLRecipeManager {
             if (!parentDir.exists()) {
                 parentDir.mkdirs();
             }
-            if (!file.exists()) {
-                createInitialXMLFile(file);
+            if (!file.exists() && !new File(BINARY_PATH).exists()) {
+                createInitialFile(snapshotFile());
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static void createInitialXMLFile(File file) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.newDocument();
+    private static void createInitialFile(File file) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            writeSnapshot(out, Collections.emptyList(), 0);
+        }
+    }
 
-        Element root = doc.createElement("recipes");
-        doc.appendChild(root);
+    // The file compaction writes in the configured layout
+    private static File snapshotFile() {
+        return new File(BINARY_SNAPSHOT ? BINARY_PATH : FILE_PATH);
+    }
 
-        saveDocument(doc, file);
+    private static void writeSnapshot(OutputStream out, List<Recipe> recipes, long generation) throws Exception {
+        if (BINARY_SNAPSHOT) {
+            RecipeBinaryWriter.write(out, recipes, generation);
+        } else {
+            RecipeXMLWriter.write(out, recipes, generation);
+        }
     }
 
     public static List<Recipe> getAllRecipes() {
-        List<Recipe> recipes = new ArrayList<>();
-        try {
-            File file = new File(FILE_PATH);
-            if (!file.exists()) {
-                return recipes;
-            }
+        return repository.findAll();
+    }
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(file);
+    public static Recipe getRecipeById(String id) {
+        return repository.findById(id);
+    }
 
-            NodeList recipeNodes = doc.getElementsByTagName("recipe");
-            for (int i = 0; i < recipeNodes.getLength(); i++) {
-                Element recipeElement = (Element) recipeNodes.item(i);
-                Recipe recipe = parseRecipe(recipeElement);
-                recipes.add(recipe);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return recipes;
+    public static List<RecipeSummary> getAllRecipeSummaries() {
+        return repository.findAllSummaries();
     }
 
-    public static Recipe getRecipeById(String id) {
-        List<Recipe> recipes = getAllRecipes();
-        return recipes.stream()
-                .filter(r -> r.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+    public static RecipeSummary getRecipeSummary(String id) {
+        return repository.findSummary(id);
     }
 
     public static void saveRecipe(Recipe recipe) throws Exception {
+        await(saveRecipeAsync(recipe));
+        System.out.println("Recipe saved successfully: " + recipe.getId() + " to " + DATA_DIR);
+    }
+
+    /**
+     * Completes once the save is durable in the journal and visible to readers, or with a
+     * {@link RecipeConflictException} if the recipe is no longer at {@code recipe.getVersion()}
+     * (0 for a new recipe). On success the caller's copy carries the new version.
+     */
+    public static CompletableFuture<Void> saveRecipeAsync(Recipe recipe) {
         if (recipe == null) {
             throw new IllegalArgumentException("Recipe cannot be null");
         }
         if (recipe.getId() == null || recipe.getId().isEmpty()) {
             throw new IllegalArgumentException("Recipe ID cannot be null or empty");
         }
-        
-        File file = new File(FILE_PATH);
-        File parentDir = file.getParentFile();
-        if (!parentDir.exists()) {
-            parentDir.mkdirs();
-        }
-        
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc;
+        return commitQueue.submit(RecipeMutation.save(recipe))
+                .thenRun(() -> recipe.setVersion(recipe.getVersion() + 1));
+    }
 
-        if (file.exists()) {
-            try {
-                doc = builder.parse(file);
-            } catch (Exception e) {
-                System.err.println("Error parsing existing XML file: " + e.getMessage());
-                // Create new document if parsing fails
-                doc = builder.newDocument();
-                Element root = doc.createElement("recipes");
-                doc.appendChild(root);
-            }
-        } else {
-            doc = builder.newDocument();
-            Element root = doc.createElement("recipes");
-            doc.appendChild(root);
+    public static CompletableFuture<Void> deleteRecipeAsync(String id) {
+        if (!repository.contains(id)) {
+            return CompletableFuture.completedFuture(null);
         }
+        return commitQueue.submit(RecipeMutation.delete(id));
+    }
 
-        Element root = doc.getDocumentElement();
-        if (root == null) {
-            root = doc.createElement("recipes");
-            doc.appendChild(root);
-        }
-        
-        Element recipeElement = findOrCreateRecipeElement(doc, root, recipe.getId());
-        updateRecipeElement(doc, recipeElement, recipe);
-        saveDocument(doc, file);
-        
-        System.out.println("Recipe saved successfully: " + recipe.getId() + " to " + FILE_PATH);
-    }
-
-    private static Element findOrCreateRecipeElement(Document doc, Element root, String id) {
-        NodeList recipes = root.getElementsByTagName("recipe");
-        for (int i = 0; i < recipes.getLength(); i++) {
-            Element recipe = (Element) recipes.item(i);
-            if (recipe.getAttribute("id").equals(id)) {
-                return recipe;
-            }
+    /**
+     * Applies a change to the recipe as it stands when the commit writer reaches it, so
+     * concurrent updates of the same recipe all take effect. Completes without doing
+     * anything if the recipe does not exist by then.
+     */
+    public static CompletableFuture<Void> updateRecipeAsync(String id, Consumer<Recipe> change) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("Recipe ID cannot be null or empty");
         }
+        return commitQueue.submit(RecipeMutation.update(id, change));
+    }
+
+    public static void updateRecipe(String id, Consumer<Recipe> change) throws Exception {
+        await(updateRecipeAsync(id, change));
+    }
 
-        Element newRecipe = doc.createElement("recipe");
-        newRecipe.setAttribute("id", id);
-        root.appendChild(newRecipe);
-        return newRecipe;
-    }
-
-    private static void updateRecipeElement(Document doc, Element recipeElement, Recipe recipe) {
-        clearElement(recipeElement);
-
-        appendTextElement(doc, recipeElement, "title", recipe.getTitle());
-        appendTextElement(doc, recipeElement, "description", recipe.getDescription());
-        appendTextElement(doc, recipeElement, "cuisineType", recipe.getCuisineType());
-        appendTextElement(doc, recipeElement, "difficultyLevel", recipe.getDifficultyLevel());
-        appendTextElement(doc, recipeElement, "preparationTime", String.valueOf(recipe.getPreparationTime()));
-        appendTextElement(doc, recipeElement, "cookingTime", String.valueOf(recipe.getCookingTime()));
-        appendTextElement(doc, recipeElement, "servings", String.valueOf(recipe.getServings()));
-        appendTextElement(doc, recipeElement, "category", recipe.getCategory());
-        appendTextElement(doc, recipeElement, "photoPath", recipe.getPhotoPath() != null ? recipe.getPhotoPath() : "");
-        appendTextElement(doc, recipeElement, "userId", recipe.getUserId());
-        appendTextElement(doc, recipeElement, "authorName", recipe.getAuthorName());
-        appendTextElement(doc, recipeElement, "averageRating", String.valueOf(recipe.getAverageRating()));
-        appendTextElement(doc, recipeElement, "totalRatings", String.valueOf(recipe.getTotalRatings()));
-        appendTextElement(doc, recipeElement, "approved", String.valueOf(recipe.isApproved()));
-        appendTextElement(doc, recipeElement, "createdAt", recipe.getCreatedAt());
-
-        // Ingredients
-        Element ingredientsElement = doc.createElement("ingredients");
-        for (Ingredient ingredient : recipe.getIngredients()) {
-            Element ingElement = doc.createElement("ingredient");
-            appendTextElement(doc, ingElement, "name", ingredient.getName());
-            appendTextElement(doc, ingElement, "quantity", String.valueOf(ingredient.getQuantity()));
-            appendTextElement(doc, ingElement, "unit", ingredient.getUnit());
-            if (ingredient.getNotes() != null) {
-                appendTextElement(doc, ingElement, "notes", ingredient.getNotes());
+    /**
+     * Read-modify-write on the calling thread, for changes too slow or side-effecting to
+     * run on the commit writer. Edits of the same recipe are serialized by a striped lock,
+     * edits of different recipes run in parallel. If a concurrent update moves the version
+     * on between the read and the save, the editor is run again on the new version.
+     * Returns the saved recipe, or null if it does not exist.
+     */
+    public static Recipe modifyRecipe(String id, RecipeEditor editor) throws Exception {
+        ReentrantLock lock = editLocks.lockFor(id);
+        lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                Recipe recipe = repository.findById(id);
+                if (recipe == null) {
+                    return null;
+                }
+                editor.edit(recipe);
+                recipe.setId(id);
+                try {
+                    saveRecipe(recipe);
+                    return recipe;
+                } catch (RecipeConflictException e) {
+                    if (attempt >= MAX_EDIT_ATTEMPTS) {
+                        throw e;
+                    }
+                }
             }
-            ingredientsElement.appendChild(ingElement);
+        } finally {
+            lock.unlock();
         }
-        recipeElement.appendChild(ingredientsElement);
-
-        // Preparation Steps
-        Element stepsElement = doc.createElement("preparationSteps");
-        for (String step : recipe.getPreparationSteps()) {
-            Element stepElement = doc.createElement("step");
-            stepElement.setTextContent(step);
-            stepsElement.appendChild(stepElement);
+    }
+
+    // Like updateRecipeAsync, for server-maintained data that edits do not own
+    public static CompletableFuture<Void> mergeRecipeAsync(String id, Consumer<Recipe> change) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("Recipe ID cannot be null or empty");
         }
-        recipeElement.appendChild(stepsElement);
-
-        // Tags
-        Element tagsElement = doc.createElement("tags");
-        for (String tag : recipe.getTags()) {
-            Element tagElement = doc.createElement("tag");
-            tagElement.setTextContent(tag);
-            tagsElement.appendChild(tagElement);
+        return commitQueue.submit(RecipeMutation.merge(id, change));
+    }
+
+    // Counted in memory and folded into the recipe with the next rating flush
+    public static void recordRating(String recipeId, int stars) {
+        if (repository.contains(recipeId)) {
+            ratings.record(recipeId, stars);
         }
-        recipeElement.appendChild(tagsElement);
-
-        // Reviews
-        Element reviewsElement = doc.createElement("reviews");
-        for (Review review : recipe.getReviews()) {
-            Element reviewElement = doc.createElement("review");
-            reviewElement.setAttribute("id", review.getId());
-            appendTextElement(doc, reviewElement, "userId", review.getUserId());
-            appendTextElement(doc, reviewElement, "username", review.getUsername());
-            appendTextElement(doc, reviewElement, "rating", String.valueOf(review.getRating()));
-            appendTextElement(doc, reviewElement, "comment", review.getComment());
-            appendTextElement(doc, reviewElement, "createdAt", review.getCreatedAt());
-            reviewsElement.appendChild(reviewElement);
+    }
+
+    // Votes per star not yet flushed into the recipe, or null
+    public static int[] getPendingRatings(String recipeId) {
+        return ratings.pendingVotes(recipeId);
+    }
+
+    // One update per rated recipe, all committed together by the commit queue
+    private static void flushRatings(Map<String, int[]> votesPerStar) throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(votesPerStar.size());
+        for (Map.Entry<String, int[]> entry : votesPerStar.entrySet()) {
+            int[] votes = entry.getValue();
+            futures.add(commitQueue.submit(RecipeMutation.merge(entry.getKey(), r -> r.addRatings(votes))));
         }
-        recipeElement.appendChild(reviewsElement);
-    }
-
-    private static Recipe parseRecipe(Element recipeElement) {
-        Recipe recipe = new Recipe();
-        recipe.setId(recipeElement.getAttribute("id"));
-        recipe.setTitle(getTextContent(recipeElement, "title"));
-        recipe.setDescription(getTextContent(recipeElement, "description"));
-        recipe.setCuisineType(getTextContent(recipeElement, "cuisineType"));
-        recipe.setDifficultyLevel(getTextContent(recipeElement, "difficultyLevel"));
-        recipe.setPreparationTime(Integer.parseInt(getTextContent(recipeElement, "preparationTime", "0")));
-        recipe.setCookingTime(Integer.parseInt(getTextContent(recipeElement, "cookingTime", "0")));
-        recipe.setServings(Integer.parseInt(getTextContent(recipeElement, "servings", "1")));
-        recipe.setCategory(getTextContent(recipeElement, "category"));
-        recipe.setPhotoPath(getTextContent(recipeElement, "photoPath"));
-        recipe.setUserId(getTextContent(recipeElement, "userId"));
-        recipe.setAuthorName(getTextContent(recipeElement, "authorName"));
-        recipe.setAverageRating(Double.parseDouble(getTextContent(recipeElement, "averageRating", "0.0")));
-        recipe.setTotalRatings(Integer.parseInt(getTextContent(recipeElement, "totalRatings", "0")));
-        recipe.setApproved(Boolean.parseBoolean(getTextContent(recipeElement, "approved", "false")));
-        recipe.setCreatedAt(getTextContent(recipeElement, "createdAt"));
-
-        // Parse ingredients
-        NodeList ingredientNodes = recipeElement.getElementsByTagName("ingredient");
-        for (int i = 0; i < ingredientNodes.getLength(); i++) {
-            Element ingElement = (Element) ingredientNodes.item(i);
-            Ingredient ingredient = new Ingredient();
-            ingredient.setName(getTextContent(ingElement, "name"));
-            ingredient.setQuantity(Double.parseDouble(getTextContent(ingElement, "quantity", "0")));
-            ingredient.setUnit(getTextContent(ingElement, "unit"));
-            ingredient.setNotes(getTextContent(ingElement, "notes"));
-            recipe.getIngredients().add(ingredient);
+        for (CompletableFuture<Void> future : futures) {
+            await(future);
         }
+    }
 
-        // Parse preparation steps
-        NodeList stepNodes = recipeElement.getElementsByTagName("step");
-        for (int i = 0; i < stepNodes.getLength(); i++) {
-            recipe.getPreparationSteps().add(stepNodes.item(i).getTextContent());
+    // Runs on the commit writer thread. Log first, then publish: a batch that fails to
+    // reach the disk never becomes visible.
+    private static void commitBatch(List<RecipeMutation> mutations) throws IOException {
+        synchronized (WRITE_LOCK) {
+            List<RecipeMutation> batch = resolveUpdates(mutations);
+            if (batch.isEmpty()) {
+                return;
+            }
+            journal.append(batch);
+            for (RecipeMutation mutation : batch) {
+                if (mutation.getType() == RecipeMutation.Type.SAVE) {
+                    Recipe previous = repository.put(mutation.getRecipe());
+                    notifySaved(previous, mutation.getRecipe());
+                } else {
+                    Recipe removed = repository.remove(mutation.getRecipeId());
+                    if (removed != null) {
+                        notifyDeleted(removed);
+                    }
+                }
+            }
         }
+    }
 
-        // Parse tags
-        NodeList tagNodes = recipeElement.getElementsByTagName("tag");
-        for (int i = 0; i < tagNodes.getLength(); i++) {
-            recipe.getTags().add(tagNodes.item(i).getTextContent());
+    /**
+     * Checks every save against the version it was based on and turns updates into
+     * saves, both against the catalog plus the earlier mutations of the batch. A stale
+     * save, or an update whose change throws, is rejected on its own and the rest of the
+     * batch goes ahead.
+     */
+    private static List<RecipeMutation> resolveUpdates(List<RecipeMutation> mutations) {
+        List<RecipeMutation> resolved = new ArrayList<>(mutations.size());
+        Map<String, Recipe> batchState = new HashMap<>();
+        for (RecipeMutation mutation : mutations) {
+            String id = mutation.getRecipeId();
+            Recipe current = batchState.containsKey(id) ? batchState.get(id) : repository.findById(id);
+            if (mutation.getType() == RecipeMutation.Type.UPDATE) {
+                if (current == null) {
+                    continue;
+                }
+                try {
+                    mutation = mutation.resolve(current);
+                } catch (RuntimeException e) {
+                    mutation.reject(e);
+                    continue;
+                }
+            } else if (mutation.getType() == RecipeMutation.Type.SAVE) {
+                Recipe saved = mutation.getRecipe();
+                long expected = saved.getVersion();
+                if (current != null ? current.getVersion() != expected : expected != 0) {
+                    mutation.reject(new RecipeConflictException(id, expected,
+                            current != null ? current.getVersion() : -1));
+                    continue;
+                }
+                if (current != null) {
+                    // Rating tallies are only ever merged in, so an edit never carries newer ones
+                    saved.setTotalRatings(current.getTotalRatings());
+                    saved.setRatingSum(current.getRatingSum());
+                    saved.setRatingHistogram(current.getRatingHistogram().clone());
+                }
+                saved.setVersion(expected + 1);
+            }
+            batchState.put(id, mutation.getType() == RecipeMutation.Type.SAVE ? mutation.getRecipe() : null);
+            resolved.add(mutation);
         }
+        return resolved;
+    }
 
-        // Parse reviews
-        NodeList reviewNodes = recipeElement.getElementsByTagName("review");
-        for (int i = 0; i < reviewNodes.getLength(); i++) {
-            Element reviewElement = (Element) reviewNodes.item(i);
-            Review review = new Review();
-            review.setId(reviewElement.getAttribute("id"));
-            review.setRecipeId(recipe.getId());
-            review.setUserId(getTextContent(reviewElement, "userId"));
-            review.setUsername(getTextContent(reviewElement, "username"));
-            review.setRating(Integer.parseInt(getTextContent(reviewElement, "rating", "0")));
-            review.setComment(getTextContent(reviewElement, "comment"));
-            review.setCreatedAt(getTextContent(reviewElement, "createdAt"));
-            recipe.getReviews().add(review);
+    // The batch is already durable at this point, so a failing listener must not fail it
+    private static void notifySaved(Recipe previous, Recipe current) {
+        for (RecipeChangeListener listener : listeners) {
+            try {
+                listener.recipeSaved(previous, current);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
         }
+    }
 
-        return recipe;
+    private static void notifyDeleted(Recipe removed) {
+        for (RecipeChangeListener listener : listeners) {
+            try {
+                listener.recipeDeleted(removed);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
-    public static void deleteRecipe(String id) throws Exception {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            return;
+    /**
+     * Registers a listener and immediately replays the current catalog to it as saves,
+     * so the listener starts from the same state the following notifications build on.
+     */
+    public static void addChangeListener(RecipeChangeListener listener) {
+        synchronized (WRITE_LOCK) {
+            for (Recipe recipe : repository.findAll()) {
+                listener.recipeSaved(null, recipe);
+            }
+            listeners.add(listener);
         }
+    }
 
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(file);
+    private static void await(CompletableFuture<Void> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
 
-        Element root = doc.getDocumentElement();
-        NodeList recipes = root.getElementsByTagName("recipe");
+    // Loads the last snapshot and replays the journal over it
+    private static void loadCatalog() throws Exception {
+        Map<String, Recipe> recipes = new LinkedHashMap<>();
+        journal = RecipeCatalogReader.read(new File(DATA_DIR), BINARY_SNAPSHOT, recipes);
+        if (journal.recordCount() > 0) {
+            System.out.println("Replayed " + journal.recordCount() + " journal records from " + DATA_DIR);
+        }
+        journal.open();
 
-        for (int i = 0; i < recipes.getLength(); i++) {
-            Element recipe = (Element) recipes.item(i);
-            if (recipe.getAttribute("id").equals(id)) {
-                root.removeChild(recipe);
-                break;
-            }
+        for (String id : recipes.keySet()) {
+            IdGenerator.observe(id);
         }
+        repository.loadAll(recipes.values());
+        commitQueue = new RecipeCommitQueue(XMLRecipeManager::commitBatch,
+                Long.getLong("recipe.commit.windowMicros", 500L),
+                Integer.getInteger("recipe.commit.maxBatchSize", 256));
+    }
 
-        saveDocument(doc, file);
+    private static void startRatingAggregator() {
+        ratings = new RatingAggregator(XMLRecipeManager::flushRatings,
+                Long.getLong("recipe.ratings.flushIntervalMs", 1000L));
+        ratings.start();
     }
 
-    private static void appendTextElement(Document doc, Element parent, String tagName, String textContent) {
-        Element element = doc.createElement(tagName);
-        element.setTextContent(textContent != null ? textContent : "");
-        parent.appendChild(element);
+    private static void startCompactor() {
+        compactor = new RecipeCompactor(journal, XMLRecipeManager::compact,
+                Long.getLong("recipe.compaction.maxJournalBytes", 8L * 1024 * 1024),
+                Integer.getInteger("recipe.compaction.maxJournalRecords", 10000),
+                Long.getLong("recipe.compaction.maxIntervalMs", 10L * 60 * 1000),
+                Long.getLong("recipe.compaction.checkIntervalMs", 5000L));
+        compactor.start();
     }
 
-    private static String getTextContent(Element parent, String tagName) {
-        return getTextContent(parent, tagName, "");
+    public static void deleteRecipe(String id) throws Exception {
+        await(deleteRecipeAsync(id));
     }
 
-    private static String getTextContent(Element parent, String tagName, String defaultValue) {
-        NodeList nodes = parent.getElementsByTagName(tagName);
-        if (nodes.getLength() > 0) {
-            return nodes.item(0).getTextContent();
+    /**
+     * Folds the journal into a new snapshot (recipes.xml, or recipes.bin with the binary
+     * layout). Writers are held only while the in-memory catalog is captured and the
+     * journal rolls to a new segment; the snapshot is then written to a temp file, fsynced
+     * and atomically renamed over the old one, after which the segments it covers are
+     * deleted. Readers are never blocked.
+     */
+    public static void compact() throws Exception {
+        synchronized (COMPACTION_LOCK) {
+            List<Recipe> recipes;
+            long generation;
+            synchronized (WRITE_LOCK) {
+                recipes = repository.findAll();
+                generation = journal.roll();
+            }
+
+            File file = snapshotFile();
+            File tempFile = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+                writeSnapshot(buffered, recipes, generation);
+                buffered.flush();
+                out.getChannel().force(true);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            // A snapshot in the other layout is older now; drop it while the journal
+            // segments it would need are still there
+            Files.deleteIfExists(new File(BINARY_SNAPSHOT ? FILE_PATH : BINARY_PATH).toPath());
+            syncDirectory(file.getParentFile());
+
+            journal.deleteSegmentsBefore(generation);
         }
-        return defaultValue;
     }
 
-    private static void clearElement(Element element) {
-        NodeList children = element.getChildNodes();
-        for (int i = children.getLength() - 1; i >= 0; i--) {
-            element.removeChild(children.item(i));
+    // Makes the rename durable; not every platform allows opening a directory
+    private static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // best effort
         }
     }
 
-    private static void saveDocument(Document doc, File file) throws Exception {
-        if (doc == null) {
-            throw new IllegalArgumentException("Document cannot be null");
+    public static void shutdown() {
+        // Last rating flush goes through the commit queue, so stop the aggregator first
+        ratings.stop();
+        commitQueue.shutdown();
+        if (compactor != null) {
+            compactor.stop();
         }
-        if (file == null) {
-            throw new IllegalArgumentException("File cannot be null");
-        }
-        
-        // Ensure parent directory exists
-        File parentDir = file.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
-        }
-        
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty("indent", "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        DOMSource source = new DOMSource(doc);
-        
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            StreamResult result = new StreamResult(fos);
-            transformer.transform(source, result);
+        try {
+            journal.close();
         } catch (IOException e) {
-            throw new Exception("Failed to write recipe to file: " + file.getAbsolutePath(), e);
+            e.printStackTrace();
         }
     }
 
     public static String generateId() {
-        return "RECIPE_" + System.currentTimeMillis() + "_" + (int)(Math.random() * 1000);
+        return IdGenerator.nextId("RECIPE_");
     }
 }
 
@@ -1,5 +1,6 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
 <%@ include file="header.jsp" %>
 
 <div class="container">
@@ -18,6 +19,14 @@
             <h3>Approved Recipes</h3>
             <p class="stat-number">${approvedRecipes}</p>
         </div>
+        <div class="stat-card">
+            <h3>Added This Week</h3>
+            <p class="stat-number">${stats.recentRecipes}</p>
+        </div>
+        <div class="stat-card">
+            <h3>Average Rating</h3>
+            <p class="stat-number"><fmt:formatNumber value="${stats.averageRating}" maxFractionDigits="1"/></p>
+        </div>
         <div class="stat-card">
             <h3>Total Users</h3>
             <p class="stat-number">${totalUsers}</p>
@@ -50,6 +59,42 @@
                 </c:forEach>
             </ul>
         </div>
+
+        <div class="admin-section">
+            <h2>Cuisines</h2>
+            <table class="admin-table">
+                <thead>
+                    <tr>
+                        <th>Cuisine</th>
+                        <th>Recipes</th>
+                        <th>Average Rating</th>
+                    </tr>
+                </thead>
+                <tbody>
+                    <c:forEach var="cuisine" items="${stats.cuisines}">
+                        <tr>
+                            <td>${empty cuisine.value ? '(none)' : cuisine.value}</td>
+                            <td>${cuisine.recipes}</td>
+                            <td><fmt:formatNumber value="${cuisine.averageRating}" maxFractionDigits="1"/></td>
+                        </tr>
+                    </c:forEach>
+                </tbody>
+            </table>
+        </div>
+
+        <div class="admin-section">
+            <h2>Total Time</h2>
+            <table class="admin-table">
+                <tbody>
+                    <c:forEach var="bucket" items="${stats.totalTimeHistogram}">
+                        <tr>
+                            <td>${bucket.label}</td>
+                            <td>${bucket.recipes}</td>
+                        </tr>
+                    </c:forEach>
+                </tbody>
+            </table>
+        </div>
     </div>
 </div>
 
@@ -6,6 +6,13 @@
     <h1 class="page-title">Manage Recipes</h1>
     <a href="${pageContext.request.contextPath}/admin" class="btn btn-secondary">Back to Dashboard</a>
 
+    <div class="filter-group">
+        <strong>Sort:</strong>
+        <a href="?action=recipes&sort=newest" class="filter-tag">Newest</a>
+        <a href="?action=recipes&sort=top-rated" class="filter-tag">Top rated</a>
+        <a href="?action=recipes&sort=quickest" class="filter-tag">Quickest</a>
+    </div>
+
     <div class="admin-table-container">
         <table class="admin-table">
             <thead>
@@ -54,6 +61,29 @@
             </tbody>
         </table>
     </div>
+
+    <c:if test="${recipePage.hasPrevious or recipePage.hasNext}">
+        <div class="filter-group">
+            <c:if test="${recipePage.hasPrevious}">
+                <c:url var="previousUrl" value="/admin">
+                    <c:param name="action" value="recipes"/>
+                    <c:param name="sort" value="${recipePage.sort.param}"/>
+                    <c:param name="page" value="${recipePage.pageNumber - 1}"/>
+                </c:url>
+                <a href="${previousUrl}" class="btn btn-sm btn-secondary">&laquo; Previous</a>
+            </c:if>
+            <span>Page ${recipePage.pageNumber}</span>
+            <c:if test="${recipePage.hasNext}">
+                <c:url var="nextUrl" value="/admin">
+                    <c:param name="action" value="recipes"/>
+                    <c:param name="sort" value="${recipePage.sort.param}"/>
+                    <c:param name="page" value="${recipePage.pageNumber + 1}"/>
+                    <c:param name="after" value="${recipePage.nextCursor}"/>
+                </c:url>
+                <a href="${nextUrl}" class="btn btn-sm btn-secondary">Next &raquo;</a>
+            </c:if>
+        </div>
+    </c:if>
 </div>
 
 <%@ include file="footer.jsp" %>
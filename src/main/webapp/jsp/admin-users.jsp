@@ -31,8 +31,8 @@
                                 ${user.role}
                             </span>
                         </td>
-                        <td>${user.favoriteRecipeIds.size()}</td>
-                        <td>${user.bookmarkedRecipeIds.size()}</td>
+                        <td>${favoriteCounts[user.id]}</td>
+                        <td>${bookmarkCounts[user.id]}</td>
                     </tr>
                 </c:forEach>
             </tbody>
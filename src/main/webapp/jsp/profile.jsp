@@ -36,11 +36,11 @@
             <div class="profile-card">
                 <h2>My Favorites</h2>
                 <c:choose>
-                    <c:when test="${empty user.favoriteRecipeIds}">
+                    <c:when test="${favoriteCount == 0}">
                         <p>No favorite recipes yet.</p>
                     </c:when>
                     <c:otherwise>
-                        <p>You have ${user.favoriteRecipeIds.size()} favorite recipe(s).</p>
+                        <p>You have ${favoriteCount} favorite recipe(s).</p>
                         <a href="${pageContext.request.contextPath}/recipes" class="btn btn-primary">View Recipes</a>
                     </c:otherwise>
                 </c:choose>
@@ -49,11 +49,11 @@
             <div class="profile-card">
                 <h2>Bookmarked Recipes</h2>
                 <c:choose>
-                    <c:when test="${empty user.bookmarkedRecipeIds}">
+                    <c:when test="${bookmarkCount == 0}">
                         <p>No bookmarked recipes yet.</p>
                     </c:when>
                     <c:otherwise>
-                        <p>You have ${user.bookmarkedRecipeIds.size()} bookmarked recipe(s).</p>
+                        <p>You have ${bookmarkCount} bookmarked recipe(s).</p>
                         <a href="${pageContext.request.contextPath}/recipes" class="btn btn-primary">View Recipes</a>
                     </c:otherwise>
                 </c:choose>
@@ -19,6 +19,7 @@
                 <span>⭐ ${recipe.averageRating} (${recipe.totalRatings} ratings)</span>
                 <span>⏱ ${recipe.totalTime} minutes</span>
                 <span>👥 ${recipe.servings} servings</span>
+                <span>❤️ ${favoriteCount} favorites</span>
             </div>
             
             <c:if test="${not empty user}">
@@ -136,11 +137,11 @@
         </c:if>
 
         <div class="recipe-section">
-            <h2>Reviews</h2>
-            <c:if test="${empty recipe.reviews}">
+            <h2>Reviews (${reviewPage.totalReviews})</h2>
+            <c:if test="${reviewPage.totalReviews == 0}">
                 <p>No reviews yet. Be the first to review!</p>
             </c:if>
-            <c:forEach var="review" items="${recipe.reviews}">
+            <c:forEach var="review" items="${reviewPage.reviews}">
                 <div class="review-item">
                     <div class="review-header">
                         <strong>${review.username}</strong>
@@ -150,6 +151,14 @@
                     <p>${review.comment}</p>
                 </div>
             </c:forEach>
+            <c:if test="${not empty param.reviewsBefore}">
+                <a href="${pageContext.request.contextPath}/recipes?action=view&id=${recipe.id}"
+                   class="btn btn-secondary btn-sm">Newest reviews</a>
+            </c:if>
+            <c:if test="${not empty reviewPage.nextCursor}">
+                <a href="${pageContext.request.contextPath}/recipes?action=view&id=${recipe.id}&reviewsBefore=${reviewPage.nextCursor}"
+                   class="btn btn-secondary btn-sm">Older reviews &raquo;</a>
+            </c:if>
         </div>
     </div>
 </div>
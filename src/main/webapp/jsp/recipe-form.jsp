@@ -14,6 +14,7 @@
         <input type="hidden" name="action" value="save">
         <c:if test="${not empty recipe}">
             <input type="hidden" name="id" value="${recipe.id}">
+            <input type="hidden" name="version" value="${recipe.version}">
         </c:if>
 
         <div class="form-section">
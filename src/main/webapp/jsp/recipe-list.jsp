@@ -10,6 +10,18 @@
         <form method="get" action="${pageContext.request.contextPath}/recipes" class="search-form">
             <input type="text" name="search" placeholder="Search recipes..." 
                    value="${param.search}" class="search-input">
+            <select name="sort" class="search-input" onchange="this.form.submit()">
+                <option value="">Best match / newest</option>
+                <option value="newest" ${param.sort == 'newest' ? 'selected' : ''}>Newest</option>
+                <option value="top-rated" ${param.sort == 'top-rated' ? 'selected' : ''}>Top rated</option>
+                <option value="quickest" ${param.sort == 'quickest' ? 'selected' : ''}>Quickest</option>
+            </select>
+            <input type="hidden" name="category" value="${param.category}">
+            <input type="hidden" name="cuisineType" value="${param.cuisineType}">
+            <input type="hidden" name="difficulty" value="${param.difficulty}">
+            <input type="hidden" name="author" value="${param.author}">
+            <input type="hidden" name="maxTime" value="${param.maxTime}">
+            <input type="hidden" name="minRating" value="${param.minRating}">
             <button type="submit" class="btn btn-primary">Search</button>
             <a href="${pageContext.request.contextPath}/recipes" class="btn btn-secondary">Clear</a>
         </form>
@@ -75,6 +87,42 @@
             </div>
                 </c:forEach>
             </div>
+
+            <!-- Pagination -->
+            <c:if test="${recipePage.hasPrevious or recipePage.hasNext}">
+                <div class="filter-group">
+                    <c:if test="${recipePage.hasPrevious}">
+                        <c:url var="previousUrl" value="/recipes">
+                            <c:param name="search" value="${param.search}"/>
+                            <c:param name="category" value="${param.category}"/>
+                            <c:param name="cuisineType" value="${param.cuisineType}"/>
+                            <c:param name="difficulty" value="${param.difficulty}"/>
+                            <c:param name="author" value="${param.author}"/>
+                            <c:param name="maxTime" value="${param.maxTime}"/>
+                            <c:param name="minRating" value="${param.minRating}"/>
+                            <c:param name="sort" value="${param.sort}"/>
+                            <c:param name="page" value="${recipePage.pageNumber - 1}"/>
+                        </c:url>
+                        <a href="${previousUrl}" class="btn btn-secondary btn-sm">&laquo; Previous</a>
+                    </c:if>
+                    <span>Page ${recipePage.pageNumber}</span>
+                    <c:if test="${recipePage.hasNext}">
+                        <c:url var="nextUrl" value="/recipes">
+                            <c:param name="search" value="${param.search}"/>
+                            <c:param name="category" value="${param.category}"/>
+                            <c:param name="cuisineType" value="${param.cuisineType}"/>
+                            <c:param name="difficulty" value="${param.difficulty}"/>
+                            <c:param name="author" value="${param.author}"/>
+                            <c:param name="maxTime" value="${param.maxTime}"/>
+                            <c:param name="minRating" value="${param.minRating}"/>
+                            <c:param name="sort" value="${param.sort}"/>
+                            <c:param name="page" value="${recipePage.pageNumber + 1}"/>
+                            <c:param name="after" value="${recipePage.nextCursor}"/>
+                        </c:url>
+                        <a href="${nextUrl}" class="btn btn-secondary btn-sm">Next &raquo;</a>
+                    </c:if>
+                </div>
+            </c:if>
         </c:otherwise>
     </c:choose>
 </div>
@@ -0,0 +1,175 @@
+package com.recipe.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Pages from the planner against the same listing sorted in full, for queries that make
+ * it walk the sort order from the cursor and for ones that make it rank the matches.
+ */
+public class RecipeQueryPlannerTest {
+    private static final int RECIPES = 400;
+    private static final String[] CATEGORIES = {"Main", "Dessert", "Soup", "Rare"};
+
+    private final RecipeIndex index = new RecipeIndex();
+    private final RecipeQueryPlanner planner = new RecipeQueryPlanner(index, RecipeSummary::new);
+    private final List<Recipe> catalog = new ArrayList<>();
+
+    @Before
+    public void indexCatalog() {
+        Random random = new Random(42);
+        for (int i = 0; i < RECIPES; i++) {
+            Recipe recipe = new Recipe();
+            recipe.setId(String.format("RECIPE_%04d", i));
+            recipe.setTitle("Recipe " + i);
+            // "Rare" is picked for about one recipe in fifty
+            recipe.setCategory(CATEGORIES[random.nextInt(50) == 0 ? 3 : random.nextInt(3)]);
+            recipe.setPreparationTime(random.nextInt(6) * 5);
+            recipe.setCookingTime(random.nextInt(4) * 10);
+            recipe.setCreatedAt(String.format("2024-01-%02dT10:00", 1 + random.nextInt(28)));
+            recipe.setApproved(random.nextInt(4) != 0);
+            recipe.addRatings(new int[] {random.nextInt(3), 0, random.nextInt(3), 0, random.nextInt(3)});
+            save(recipe);
+        }
+        // Later saves move recipes within every order
+        for (int i = 0; i < RECIPES; i += 7) {
+            Recipe recipe = catalog.get(i).copy();
+            recipe.setCookingTime(recipe.getCookingTime() + 15);
+            recipe.addRatings(new int[] {0, 0, 0, 0, 2});
+            save(recipe);
+        }
+        Recipe deleted = catalog.remove(3);
+        index.recipeDeleted(deleted);
+    }
+
+    private void save(Recipe recipe) {
+        Recipe previous = null;
+        for (int i = 0; i < catalog.size(); i++) {
+            if (catalog.get(i).getId().equals(recipe.getId())) {
+                previous = catalog.set(i, recipe);
+            }
+        }
+        if (previous == null) {
+            catalog.add(recipe);
+        }
+        index.recipeSaved(previous, recipe);
+    }
+
+    @Test
+    public void keysetPagesMatchTheFullOrder() {
+        List<RecipeQuery> queries = new ArrayList<>();
+        queries.add(RecipeQuery.everything());
+        queries.add(RecipeQuery.approvedOnly());
+        RecipeQuery rare = RecipeQuery.everything();
+        rare.setCategory("rare");
+        queries.add(rare);
+        RecipeQuery quickDesserts = RecipeQuery.approvedOnly();
+        quickDesserts.setCategory("Dessert");
+        quickDesserts.setMaxTotalTime(30);
+        queries.add(quickDesserts);
+
+        for (RecipeSort sort : new RecipeSort[] {RecipeSort.NEWEST, RecipeSort.TOP_RATED, RecipeSort.QUICKEST}) {
+            for (RecipeQuery query : queries) {
+                List<String> expected = expected(query, sort.comparator());
+                assertEquals(sort + " by cursor", expected, viaCursor(query, sort, 9));
+                assertEquals(sort + " by offset", expected, viaOffset(query, sort, 9));
+            }
+        }
+    }
+
+    @Test
+    public void catalogOrderPagesStopAtTheWindow() {
+        RecipeQuery query = RecipeQuery.everything();
+        List<String> expected = expected(query, null);
+        assertEquals(expected, viaOffset(query, RecipeSort.RELEVANCE, 25));
+        RecipePage page = planner.page(query, RecipeSort.RELEVANCE, null, 0, 5);
+        assertEquals(expected.subList(0, 5), ids(page.getRecipes()));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void withdrawnApprovalHidesTheRecipeAgain() {
+        Recipe recipe = catalog.get(0).copy();
+        recipe.setUserId("USER_1");
+        recipe.setApproved(true);
+        save(recipe);
+        RecipeQuery other = RecipeQuery.visibleTo("USER_2");
+        assertTrue(planner.execute(other).contains(recipe));
+
+        Recipe pending = recipe.copy();
+        pending.setApproved(false);
+        save(pending);
+        assertFalse(index.approved().contains(index.docId(pending.getId())));
+        assertFalse(ids(planner.page(other, RecipeSort.NEWEST, null, 0, RECIPES).getRecipes()).contains(pending.getId()));
+        assertFalse(planner.execute(RecipeQuery.approvedOnly()).contains(pending));
+        assertTrue(planner.execute(RecipeQuery.visibleTo("USER_1")).contains(pending));
+    }
+
+    private List<String> expected(RecipeQuery query, Comparator<Recipe> order) {
+        List<Recipe> matches = new ArrayList<>();
+        for (Recipe recipe : catalog) {
+            if (matches(query, recipe)) {
+                matches.add(recipe);
+            }
+        }
+        if (order != null) {
+            matches.sort(order);
+        }
+        List<String> ids = new ArrayList<>();
+        for (Recipe recipe : matches) {
+            ids.add(recipe.getId());
+        }
+        return ids;
+    }
+
+    private static boolean matches(RecipeQuery query, Recipe recipe) {
+        if (!query.isIncludeUnapproved() && !recipe.isApproved()) {
+            return false;
+        }
+        if (query.getCategory() != null && !query.getCategory().equalsIgnoreCase(recipe.getCategory())) {
+            return false;
+        }
+        return query.matchesResidual(recipe);
+    }
+
+    private List<String> viaCursor(RecipeQuery query, RecipeSort sort, int limit) {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            RecipePage page = planner.page(query, sort, cursor, 0, limit);
+            ids.addAll(ids(page.getRecipes()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private List<String> viaOffset(RecipeQuery query, RecipeSort sort, int limit) {
+        List<String> ids = new ArrayList<>();
+        for (int offset = 0; ; offset += limit) {
+            RecipePage page = planner.page(query, sort, null, offset, limit);
+            ids.addAll(ids(page.getRecipes()));
+            if (!page.isHasNext()) {
+                return ids;
+            }
+        }
+    }
+
+    private static List<String> ids(List<RecipeSummary> summaries) {
+        List<String> ids = new ArrayList<>();
+        for (RecipeSummary summary : summaries) {
+            ids.add(summary.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,86 @@
+package com.recipe.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.recipe.model.Recipe;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SqlQueryTranslatorTest {
+
+    @Test
+    public void unsetPredicatesAddNoConditions() {
+        SqlQueryTranslator.SqlQuery select = new SqlQueryTranslator(RecipeQuery.everything())
+                .select("id", RecipeSort.RELEVANCE, null, 0, -1);
+        assertEquals("SELECT id FROM recipes ORDER BY seq", select.getSql());
+        assertTrue(select.getParams().isEmpty());
+    }
+
+    @Test
+    public void valuesAreBoundSoTheStatementRepeats() {
+        SqlQueryTranslator.SqlQuery first = new SqlQueryTranslator(facets("Dessert", "USER_1"))
+                .select("id", RecipeSort.NEWEST, null, 0, 10);
+        SqlQueryTranslator.SqlQuery second = new SqlQueryTranslator(facets("soup", "USER_2"))
+                .select("id", RecipeSort.NEWEST, null, 20, 10);
+        assertEquals(first.getSql(), second.getSql());
+        assertFalse(first.getSql().contains("Dessert"));
+        // Facets are matched on their case-folded column
+        assertEquals(Arrays.<Object>asList("dessert", "USER_1", 10, 0), first.getParams());
+        assertEquals(Arrays.<Object>asList("soup", "USER_2", 10, 20), second.getParams());
+    }
+
+    @Test
+    public void visibilityIsApprovedOrTheViewersOwn() {
+        assertTrue(new SqlQueryTranslator(RecipeQuery.approvedOnly()).ids().getSql()
+                .endsWith(" WHERE approved = TRUE"));
+        SqlQueryTranslator.SqlQuery own = new SqlQueryTranslator(RecipeQuery.visibleTo("USER_1")).ids();
+        assertTrue(own.getSql().endsWith(" WHERE (approved = TRUE OR user_id = ?)"));
+        assertEquals(Arrays.<Object>asList("USER_1"), own.getParams());
+    }
+
+    @Test
+    public void everyTextTokenMustPrefixMatchAndRanks() {
+        RecipeQuery query = RecipeQuery.everything();
+        query.setText("Green CURRY!");
+        SqlQueryTranslator.SqlQuery select = new SqlQueryTranslator(query)
+                .select("id", RecipeSort.RELEVANCE, null, 0, 5);
+        assertEquals(Arrays.<Object>asList("green%", "curry%", "green%", "curry%", 5, 0), select.getParams());
+        assertTrue(select.getSql().contains(" DESC, seq LIMIT ? OFFSET ?"));
+
+        query.setText("!!!");
+        assertTrue(new SqlQueryTranslator(query).ids().getSql().endsWith(" WHERE 1 = 0"));
+    }
+
+    @Test
+    public void keysetContinuesAfterTheProbe() {
+        Recipe after = new Recipe();
+        after.setId("RECIPE_9");
+        after.setPreparationTime(12);
+        SqlQueryTranslator.SqlQuery select = new SqlQueryTranslator(RecipeQuery.approvedOnly())
+                .select("id", RecipeSort.QUICKEST, after, 0, 10);
+        assertEquals("SELECT id FROM recipes WHERE approved = TRUE AND "
+                + "(total_time > ? OR (total_time = ? AND id > ?)) ORDER BY total_time, id LIMIT ? OFFSET ?",
+                select.getSql());
+        assertEquals(Arrays.<Object>asList(12, 12, "RECIPE_9", 10, 0), select.getParams());
+    }
+
+    @Test
+    public void cookWithNeedsAnIngredientWithTerms() {
+        SqlQueryTranslator translator = new SqlQueryTranslator(RecipeQuery.approvedOnly());
+        assertNull(translator.cookWith("id", Arrays.asList("", "  ")));
+        SqlQueryTranslator.SqlQuery select = translator.cookWith("id", Arrays.asList("Olive oil", "tomatoes"));
+        // Terms are stemmed as in IngredientIndex, each ingredient with its term count
+        assertEquals(Arrays.<Object>asList("olive", "oil", 2, "tomato", 1), select.getParams());
+        assertTrue(select.getSql().endsWith(" WHERE approved = TRUE ORDER BY "
+                + "CAST(m.covered AS DOUBLE PRECISION) / m.total DESC, m.total - m.covered, seq"));
+    }
+
+    private static RecipeQuery facets(String category, String viewerId) {
+        RecipeQuery query = RecipeQuery.visibleTo(viewerId);
+        query.setCategory(category);
+        return query;
+    }
+}
@@ -0,0 +1,327 @@
+package com.recipe.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.recipe.model.Ingredient;
+import com.recipe.model.Recipe;
+import com.recipe.model.RecipeSummary;
+import com.recipe.util.IdGenerator;
+import com.recipe.util.RecipeCatalogReader;
+import com.recipe.util.RecipeConflictException;
+import com.recipe.util.RecipeJournal;
+import com.recipe.util.RecipeMutation;
+import com.recipe.util.RecipeXMLWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link SqlRecipeStore} against an H2 file database in a temporary directory, which
+ * also holds the journaled catalog it is seeded from.
+ */
+public class SqlRecipeStoreTest {
+    private File dir;
+    private String url;
+    private SqlRecipeStore store;
+
+    @Before
+    public void createDatabase() throws Exception {
+        dir = Files.createTempDirectory("sql-recipe-store").toFile();
+        url = "jdbc:h2:file:" + new File(dir, "recipes-db").getPath();
+    }
+
+    @After
+    public void removeDatabase() {
+        if (store != null) {
+            store.shutdown();
+        }
+        deleteRecursively(dir);
+    }
+
+    private SqlRecipeStore open() throws Exception {
+        return new SqlRecipeStore(url, "sa", "", dir, 60000);
+    }
+
+    @Test
+    public void seedsOnceFromSnapshotAndJournal() throws Exception {
+        Recipe kept = recipe("Tomato soup", "Soup", 10, 20);
+        kept.setVersion(3);
+        kept.getIngredients().add(new Ingredient("Tomatoes", 4, "pcs", "ripe"));
+        kept.getPreparationSteps().add("Simmer");
+        kept.getTags().add("vegan");
+        Recipe deleted = recipe("Gone", "Soup", 5, 5);
+        try (FileOutputStream out = new FileOutputStream(new File(dir, RecipeCatalogReader.RECIPES_FILE))) {
+            RecipeXMLWriter.write(out, Arrays.asList(kept, deleted), 0);
+        }
+        Recipe journaled = recipe("Bread", "Baking", 30, 40);
+        RecipeJournal journal = new RecipeJournal(dir, RecipeCatalogReader.JOURNAL_FILE);
+        journal.replay(0, recipe -> { }, id -> { });
+        journal.open();
+        journal.append(Arrays.asList(RecipeMutation.save(journaled), RecipeMutation.delete(deleted.getId())));
+        journal.close();
+
+        store = open();
+
+        List<Recipe> all = store.findAll();
+        assertEquals(Arrays.asList(kept.getId(), journaled.getId()), ids(all));
+        Recipe seeded = store.findById(kept.getId());
+        assertEquals("Tomato soup", seeded.getTitle());
+        assertEquals(3, seeded.getVersion());
+        assertEquals("Tomatoes", seeded.getIngredients().get(0).getName());
+        assertEquals("ripe", seeded.getIngredients().get(0).getNotes());
+        assertEquals(Arrays.asList("Simmer"), seeded.getPreparationSteps());
+        assertEquals(Arrays.asList("vegan"), seeded.getTags());
+
+        // A second start keeps the database as it is, even if the files changed since
+        store.shutdown();
+        Files.delete(new File(dir, RecipeCatalogReader.RECIPES_FILE).toPath());
+        store = open();
+        assertEquals(2, store.findAll().size());
+    }
+
+    @Test
+    public void saveIsConditionalOnTheVersion() throws Exception {
+        store = open();
+        Recipe recipe = recipe("Pancakes", "Breakfast", 5, 10);
+        store.save(recipe);
+        assertEquals(1, recipe.getVersion());
+
+        Recipe stale = store.findById(recipe.getId());
+        recipe.setTitle("Fluffy pancakes");
+        store.save(recipe);
+        assertEquals(2, recipe.getVersion());
+
+        stale.setTitle("Thin pancakes");
+        try {
+            store.save(stale);
+            fail("stale save went through");
+        } catch (RecipeConflictException e) {
+            assertEquals(1, e.getExpectedVersion());
+            assertEquals(2, e.getCurrentVersion());
+        }
+        assertEquals("Fluffy pancakes", store.findById(recipe.getId()).getTitle());
+
+        // Creating a recipe that exists is a conflict too
+        Recipe duplicate = recipe("Pancakes again", "Breakfast", 1, 1);
+        duplicate.setId(recipe.getId());
+        try {
+            store.save(duplicate);
+            fail("second creation went through");
+        } catch (RecipeConflictException e) {
+            assertEquals(2, e.getCurrentVersion());
+        }
+    }
+
+    @Test
+    public void concurrentCreationsOfOneIdLetExactlyOneThrough() throws Exception {
+        store = open();
+        String id = IdGenerator.nextId("RECIPE_");
+        int writers = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            String title = "Contender " + i;
+            results.add(pool.submit((Callable<Boolean>) () -> {
+                Recipe recipe = recipe(title, "Race", 1, 1);
+                recipe.setId(id);
+                start.await();
+                try {
+                    store.save(recipe);
+                    return true;
+                } catch (RecipeConflictException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int created = 0;
+        try {
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    created++;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, created);
+        assertEquals(1, store.findById(id).getVersion());
+    }
+
+    @Test
+    public void modifyRetriesAndDeleteRemovesEverything() throws Exception {
+        store = open();
+        Recipe recipe = recipe("Lemon tart", "Dessert", 20, 30);
+        recipe.getIngredients().add(new Ingredient("Lemons", 3, "pcs"));
+        store.save(recipe);
+
+        Recipe modified = store.modify(recipe.getId(), r -> r.setServings(r.getServings() + 2));
+        assertEquals(6, modified.getServings());
+        assertEquals(2, store.findById(recipe.getId()).getVersion());
+
+        store.delete(recipe.getId());
+        assertNull(store.findById(recipe.getId()));
+        assertNull(store.findSummary(recipe.getId()));
+        assertNull(store.modify(recipe.getId(), r -> r.setServings(1)));
+        assertTrue(store.query(text("lemon")).isEmpty());
+        assertTrue(store.cookWith(RecipeQuery.everything(), Arrays.asList("lemon")).isEmpty());
+    }
+
+    @Test
+    public void pagesFollowKeysetCursorsAndOffsets() throws Exception {
+        store = open();
+        int count = 25;
+        for (int i = 0; i < count; i++) {
+            // Repeated times, so the id tie-breaker matters
+            store.save(recipe("Dish " + i, "Main", (i * 7) % 5, 10));
+        }
+
+        List<String> viaCursor = new ArrayList<>();
+        int previousTime = -1;
+        String cursor = null;
+        int pages = 0;
+        do {
+            RecipePage page = store.page(RecipeQuery.everything(), RecipeSort.QUICKEST, cursor, 0, 10);
+            for (RecipeSummary summary : page.getRecipes()) {
+                assertTrue(summary.getTotalTime() >= previousTime);
+                previousTime = summary.getTotalTime();
+                viaCursor.add(summary.getId());
+            }
+            cursor = page.getNextCursor();
+            assertEquals(page.isHasNext(), cursor != null);
+            pages++;
+        } while (cursor != null);
+        assertEquals(3, pages);
+        assertEquals(count, new HashSet<>(viaCursor).size());
+
+        List<String> viaOffset = new ArrayList<>();
+        for (int offset = 0; offset < count; offset += 10) {
+            RecipePage page = store.page(RecipeQuery.everything(), RecipeSort.QUICKEST, null, offset, 10);
+            assertEquals(offset + 10 < count, page.isHasNext());
+            for (RecipeSummary summary : page.getRecipes()) {
+                viaOffset.add(summary.getId());
+            }
+        }
+        assertEquals(viaCursor, viaOffset);
+    }
+
+    @Test
+    public void queriesAreEvaluatedByTheDatabase() throws Exception {
+        store = open();
+        Recipe curry = recipe("Green curry", "Main", 15, 25);
+        curry.setCuisineType("Thai");
+        curry.getIngredients().add(new Ingredient("Coconut milk", 1, "can"));
+        curry.getIngredients().add(new Ingredient("Green curry paste", 2, "tbsp"));
+        store.save(curry);
+        Recipe draft = recipe("Red curry", "Main", 15, 25);
+        draft.setCuisineType("thai");
+        draft.setApproved(false);
+        draft.setUserId("USER_1");
+        store.save(draft);
+        Recipe salad = recipe("Potato salad", "Side", 10, 0);
+        salad.getIngredients().add(new Ingredient("Potatoes", 6, "pcs"));
+        store.save(salad);
+
+        RecipeQuery approved = RecipeQuery.approvedOnly();
+        approved.setText("curr");
+        assertEquals(Arrays.asList(curry.getId()), ids(store.query(approved)));
+        assertEquals(2, store.query(text("curr")).size());
+        RecipeQuery own = RecipeQuery.visibleTo("USER_1");
+        own.setText("curry");
+        assertEquals(new HashSet<>(Arrays.asList(curry.getId(), draft.getId())), new HashSet<>(ids(store.query(own))));
+
+        RecipeQuery thai = RecipeQuery.everything();
+        thai.setCuisineType("THAI");
+        assertEquals(2, store.query(thai).size());
+        RecipeQuery quick = RecipeQuery.approvedOnly();
+        quick.setMaxTotalTime(10);
+        assertEquals(Arrays.asList(salad.getId()), ids(store.query(quick)));
+
+        store.recordRating(salad.getId(), 5);
+        assertNotNull(store.getPendingRatings(salad.getId()));
+        RecipeQuery rated = RecipeQuery.approvedOnly();
+        rated.setMinRating(4.0);
+        assertTrue(store.query(rated).isEmpty());
+
+        List<Recipe> cookable = store.cookWith(RecipeQuery.approvedOnly(), Arrays.asList("potato", "coconut milk"));
+        assertEquals(Arrays.asList(salad.getId(), curry.getId()), ids(cookable));
+        assertFalse(cookable.get(0).getIngredients().isEmpty());
+
+        CatalogStats stats = store.statistics();
+        assertEquals(3, stats.getTotalRecipes());
+        assertEquals(2, stats.getApprovedRecipes());
+    }
+
+    @Test
+    public void readFailuresAreThrown() throws Exception {
+        store = open();
+        store.save(recipe("Toast", "Breakfast", 1, 2));
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE recipe_tags");
+        }
+        try {
+            store.findAll();
+            fail("a failed read looked like a result");
+        } catch (IllegalStateException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    private static Recipe recipe(String title, String category, int preparationTime, int cookingTime) {
+        Recipe recipe = new Recipe();
+        recipe.setId(IdGenerator.nextId("RECIPE_"));
+        recipe.setTitle(title);
+        recipe.setCategory(category);
+        recipe.setPreparationTime(preparationTime);
+        recipe.setCookingTime(cookingTime);
+        recipe.setServings(4);
+        recipe.setApproved(true);
+        return recipe;
+    }
+
+    private static RecipeQuery text(String text) {
+        RecipeQuery query = RecipeQuery.everything();
+        query.setText(text);
+        return query;
+    }
+
+    private static List<String> ids(List<Recipe> recipes) {
+        List<String> ids = new ArrayList<>();
+        for (Recipe recipe : recipes) {
+            ids.add(recipe.getId());
+        }
+        return ids;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
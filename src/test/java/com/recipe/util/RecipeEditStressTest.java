@@ -0,0 +1,159 @@
+package com.recipe.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.recipe.model.Recipe;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 64 writers increment counters on a few shared recipes through
+ * {@link XMLRecipeManager#modifyRecipe} while a background thread bumps their versions,
+ * forcing conflicts and retries. Every increment must survive.
+ */
+public class RecipeEditStressTest {
+    private static final int RECIPES = 8;
+    private static final int WRITERS = 64;
+    private static final int EDITS_PER_WRITER = 100;
+    // One below modifyRecipe's attempt limit: an update costs at most one attempt of the
+    // edit in progress on its recipe, so no writer can run out of attempts
+    private static final int NOISE_ROUNDS = 4;
+
+    private static File dataDir;
+
+    @BeforeClass
+    public static void useTemporaryDataDirectory() throws Exception {
+        // Must be set before the manager is first touched, which loads the catalog from it
+        dataDir = Files.createTempDirectory("recipe-edit-stress").toFile();
+        System.setProperty("recipe.data.dir", dataDir.getPath());
+    }
+
+    @AfterClass
+    public static void stop() {
+        XMLRecipeManager.shutdown();
+        deleteRecursively(dataDir);
+    }
+
+    @Test
+    public void concurrentEditsLoseNoUpdates() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < RECIPES; i++) {
+            ids.add(saveNewRecipe("Stress " + i));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 1);
+        Future<?> noise = pool.submit(() -> {
+            for (int round = 0; round < NOISE_ROUNDS; round++) {
+                for (String id : ids) {
+                    XMLRecipeManager.updateRecipe(id, recipe -> recipe.setDescription("touched"));
+                }
+                Thread.sleep(5);
+            }
+            return null;
+        });
+        int[] expected = new int[RECIPES];
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            for (int i = 0; i < EDITS_PER_WRITER; i++) {
+                expected[(writer + i) % RECIPES]++;
+            }
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < EDITS_PER_WRITER; i++) {
+                    XMLRecipeManager.modifyRecipe(ids.get((writer + i) % RECIPES),
+                            recipe -> recipe.setServings(recipe.getServings() + 1));
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> writer : writers) {
+                writer.get(5, TimeUnit.MINUTES);
+            }
+            noise.get(1, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int total = 0;
+        for (int i = 0; i < RECIPES; i++) {
+            int servings = XMLRecipeManager.getRecipeById(ids.get(i)).getServings();
+            assertEquals("increments on " + ids.get(i), expected[i], servings);
+            total += servings;
+        }
+        assertEquals(WRITERS * EDITS_PER_WRITER, total);
+    }
+
+    @Test
+    public void editIsRerunOnTheVersionAConcurrentUpdateLeft() throws Exception {
+        String id = saveNewRecipe("Retry");
+        AtomicInteger runs = new AtomicInteger();
+
+        XMLRecipeManager.modifyRecipe(id, recipe -> {
+            if (runs.incrementAndGet() == 1) {
+                // Commits between this edit's read and its save
+                XMLRecipeManager.updateRecipe(id, other -> other.setDescription("concurrent"));
+            }
+            recipe.setServings(recipe.getServings() + 1);
+        });
+
+        assertEquals(2, runs.get());
+        Recipe saved = XMLRecipeManager.getRecipeById(id);
+        assertEquals(1, saved.getServings());
+        assertEquals("concurrent", saved.getDescription());
+    }
+
+    @Test
+    public void failingChangeFailsOnlyItsOwnMutation() throws Exception {
+        String id = saveNewRecipe("Isolated");
+        // Submitted back to back, so they usually share a batch
+        CompletableFuture<Void> before = XMLRecipeManager.mergeRecipeAsync(id, r -> r.setServings(r.getServings() + 1));
+        CompletableFuture<Void> failing = XMLRecipeManager.mergeRecipeAsync(id, r -> {
+            r.setServings(100);
+            throw new IllegalStateException("broken change");
+        });
+        CompletableFuture<Void> after = XMLRecipeManager.mergeRecipeAsync(id, r -> r.setServings(r.getServings() + 1));
+
+        before.get(10, TimeUnit.SECONDS);
+        after.get(10, TimeUnit.SECONDS);
+        try {
+            failing.get(10, TimeUnit.SECONDS);
+            fail("the broken change was committed");
+        } catch (ExecutionException e) {
+            assertEquals("broken change", e.getCause().getMessage());
+        }
+        assertEquals(2, XMLRecipeManager.getRecipeById(id).getServings());
+    }
+
+    private static String saveNewRecipe(String title) throws Exception {
+        Recipe recipe = new Recipe();
+        recipe.setId(IdGenerator.nextId("RECIPE_"));
+        recipe.setTitle(title);
+        recipe.setServings(0);
+        XMLRecipeManager.saveRecipe(recipe);
+        return recipe.getId();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}